@@ -0,0 +1,8 @@
+# Strip debug logging from release builds, the messages are never built either
+-assumenosideeffects class maitta.git.sudoku.DebugLog {
+    public static void d(...);
+}
+-assumenosideeffects class android.util.Log {
+    public static int d(...);
+    public static int v(...);
+}
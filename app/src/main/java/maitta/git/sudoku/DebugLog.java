@@ -0,0 +1,52 @@
+package maitta.git.sudoku;
+
+import android.util.Log;
+
+/**
+ * Single place for the app's logging. Debug messages are only built when ENABLED, so callers pass
+ * the parts of a message instead of concatenating them. Release builds strip every d() call, see
+ * proguard-rules.pro.
+ */
+public final class DebugLog {
+	public static final String TAG = "sudoku";
+	public static final boolean ENABLED = BuildConfig.DEBUG;
+
+	private DebugLog() {
+	}
+
+	public static void d(String message) {
+		if (ENABLED)
+			Log.d(TAG, message);
+	}
+
+	public static void d(String message, int value) {
+		if (ENABLED)
+			Log.d(TAG, message + value);
+	}
+
+	public static void d(String message, float value) {
+		if (ENABLED)
+			Log.d(TAG, message + value);
+	}
+
+	public static void d(String message, int x, int y) {
+		if (ENABLED)
+			Log.d(TAG, message + x + ", " + y);
+	}
+
+	/**
+	 * @param value only converted to a string when logging is enabled
+	 */
+	public static void d(String message, Object value) {
+		if (ENABLED)
+			Log.d(TAG, message + value);
+	}
+
+	public static void i(String message) {
+		Log.i(TAG, message);
+	}
+
+	public static void e(String message, Throwable error) {
+		Log.e(TAG, message, error);
+	}
+}
@@ -4,11 +4,10 @@ import static maitta.git.sudoku.ViewModels.GameViewModel.DIFFICULTY_CONTINUE;
 import static maitta.git.sudoku.ViewModels.GameViewModel.KEY_DIFFICULTY;
 import static maitta.git.sudoku.ViewModels.GameViewModel.PREF_PUZZLE;
 
-import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -19,45 +18,133 @@ import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import maitta.git.sudoku.Models.AutoSaver;
+import maitta.git.sudoku.Models.Generator;
+import maitta.git.sudoku.Models.Grader;
+import maitta.git.sudoku.Models.Metrics;
+import maitta.git.sudoku.Models.PuzzlePool;
+import maitta.git.sudoku.Models.SaveFormat;
 import maitta.git.sudoku.ViewModels.GameViewModel;
 import maitta.git.sudoku.ViewModels.PuzzleViewViewModel;
 
 /**
- * Handles creation of puzzles in 3 difficulties. Saves current progress to the preferences (xml file)
- * see https://developer.android.com/training/basics/data-storage/shared-preferences.html#ReadSharedPreference
+ * Handles creation of puzzles in 3 difficulties on 4x4 to 25x25 boards. Saves current progress
+ * to a small binary file, see SaveFormat. Older versions saved it to the preferences (xml file),
+ * which is still read once.
  */
 public class Game extends AppCompatActivity {
-	private static final String TAG = "sudoku";
 	private PuzzleView puzzleView;
 	private final GameViewModel gameVM = new GameViewModel();
 	public GameViewModel getGameVM(){ return gameVM; }
+	/**
+	 * Puzzles generated in the background so that starting a game does not wait on the generator,
+	 * kept by SudokuApp for the whole process
+	 */
+	private PuzzlePool puzzlePool;
+	/**
+	 * Saves after every move on a background thread, the UI thread never touches the save file
+	 * once the game is loaded. Kept by SudokuApp, a recreated activity continues from its last
+	 * snapshot even if the write is still queued.
+	 */
+	private AutoSaver autoSaver;
+	protected AutoSaver getAutoSaver(){ return autoSaver; }
+	/**
+	 * Shown while a puzzle is generated in the background, null otherwise
+	 */
+	private AlertDialog generating;
 
 	@Override
 	protected void onResume() {
 		super.onResume();
+		puzzlePool.resume();
 	}
 
 	@Override
 	protected void onPause() {
 		super.onPause();
-		Log.d(TAG, "onPause");
-		// Save the current puzzle
-		getPreferences(MODE_PRIVATE).edit()
-				.putString(PREF_PUZZLE, gameVM.toPuzzleString(gameVM.getPuzzle())).apply();
+		DebugLog.d("onPause");
+		puzzlePool.pause();
+		// Save the current puzzle right away instead of waiting for the debounce
+		autoSaver.save(gameVM.toSnapshot());
+		autoSaver.flush();
+		if (autoSaver.getLastError() != null)
+			DebugLog.e("onPause: last save failed", autoSaver.getLastError());
+	}
+
+	protected File getSaveFile() {
+		return ((SudokuApp) getApplication()).getSaveFile();
+	}
+
+	/**
+	 * @return the saved game, or null when there is none or it cannot be read
+	 */
+	private SaveFormat.Snapshot loadGame() {
+		// Newer than the file while a write is queued, e.g. right after a rotation
+		SaveFormat.Snapshot latest = autoSaver.getLatest();
+		if (latest != null)
+			return latest;
+		File file = getSaveFile();
+		if (!file.exists())
+			return null;
+		try {
+			return SaveFormat.read(file);
+		} catch (IOException e) {
+			DebugLog.e("loadGame: ignoring unreadable save", e);
+			return null;
+		}
 	}
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
-		Log.d(TAG, "game onCreate");
+		DebugLog.d("game onCreate");
 
 		setContentView(R.layout.game_activity);
 		super.onCreate(savedInstanceState);
 		setupActionBar();
+		SudokuApp app = (SudokuApp) getApplication();
+		puzzlePool = app.getPuzzlePool();
+		gameVM.setPuzzlePool(puzzlePool);
+		autoSaver = app.getAutoSaver();
+		gameVM.setOnMoveListener(new GameViewModel.OnMoveListener() {
+			@Override
+			public void onMove(int x, int y, int value) {
+				autoSaver.save(gameVM.toSnapshot());
+			}
+
+			@Override
+			public void onMarks(int x, int y, int marks) {
+				autoSaver.save(gameVM.toSnapshot());
+			}
+		});
 		this.start(DIFFICULTY_CONTINUE);
 		// If the activity is restarted, do a continue next time
 		getIntent().putExtra(KEY_DIFFICULTY, DIFFICULTY_CONTINUE);
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		if (generating != null) {
+			generating.dismiss();
+			generating = null;
+		}
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		// The board layer is cheap to render again, give its memory back first
+		if (level >= TRIM_MEMORY_RUNNING_LOW && puzzleView != null) {
+			puzzleView.releaseCaches();
+		}
+	}
+
 	/**
 	 * Sets icon and removes title from the action bar.
 	 */
@@ -70,17 +157,22 @@ public class Game extends AppCompatActivity {
 	}
 
 	/**
-	 *  Open the keypad if there are any valid moves
+	 *  Open the keypad if there are any valid moves, givens cannot be changed at all. While
+	 *  conflicts are allowed every value is offered.
 	 *  */
 	protected void showKeypadOrError(int x, int y) {
-		int tiles[] = gameVM.getUsedTiles(x, y);
-		if (tiles.length == 9) {
-			Toast toast = Toast.makeText(this, R.string.no_moves_label, Toast.LENGTH_SHORT);
+		int tiles = gameVM.isAllowConflicts() ? 0 : gameVM.getUsedMask(x, y);
+		boolean given = gameVM.isGiven(x, y);
+		if (given || tiles == gameVM.getAllMask()) {
+			int message = given ? R.string.given_tile_label : R.string.no_moves_label;
+			Toast toast = Toast.makeText(this, message, Toast.LENGTH_SHORT);
 			toast.setGravity(Gravity.CENTER, 0, 0);
 			toast.show();
 		} else {
-			Log.d(TAG, "showKeypad: used=" + gameVM.toPuzzleString(tiles));
-			Dialog keyDialog = new Keypad(this, tiles, puzzleView);
+			if (DebugLog.ENABLED)
+				DebugLog.d("showKeypad: used=" + Integer.toBinaryString(tiles));
+			Keypad keyDialog = new Keypad(this, tiles, gameVM.getBoxSize(), puzzleView);
+			keyDialog.setPencilMode(gameVM.isPencilMode());
 			keyDialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
 			Window window = keyDialog.getWindow();
 			window.setGravity(Gravity.BOTTOM);
@@ -89,11 +181,44 @@ public class Game extends AppCompatActivity {
 		}
 	}
 
+	/**
+	 * Select the tile of the next logical step and name the technique that finds it. An entry that
+	 * does not match the solution is pointed out instead.
+	 * */
+	protected void showHint() {
+		Grader.Hint hint = gameVM.getHint();
+		int size = gameVM.getSize();
+		if (hint == null) {
+			int mistake = gameVM.findMistake();
+			if (mistake >= 0)
+				puzzleView.select(mistake % size, mistake / size);
+			Toast.makeText(this, mistake >= 0 ? R.string.mistake_label : R.string.no_hint_label,
+					Toast.LENGTH_SHORT).show();
+			return;
+		}
+		puzzleView.select(hint.getCell() % size, hint.getCell() / size);
+		String techniques[] = getResources().getStringArray(R.array.techniques);
+		Toast.makeText(this, getString(R.string.hint_format, techniques[hint.getTechnique().ordinal()],
+				hint.getValue()), Toast.LENGTH_LONG).show();
+	}
+
 	@Override
 	public boolean onCreateOptionsMenu(Menu menu) {
 		getMenuInflater().inflate(R.menu.main, menu);
+		menu.setGroupVisible(R.id.debugGroup, BuildConfig.DEBUG);
 		return super.onCreateOptionsMenu(menu);
 	}
+
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		// Pencil mode can also be switched from the keyboard
+		menu.findItem(R.id.pencilMode).setChecked(gameVM.isPencilMode());
+		menu.findItem(R.id.autoPrune).setChecked(gameVM.isAutoPrune());
+		menu.findItem(R.id.allowConflicts).setChecked(gameVM.isAllowConflicts());
+		menu.findItem(R.id.undo).setEnabled(gameVM.canUndo());
+		menu.findItem(R.id.redo).setEnabled(gameVM.canRedo());
+		return super.onPrepareOptionsMenu(menu);
+	}
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		super.onOptionsItemSelected(item);
@@ -103,24 +228,187 @@ public class Game extends AppCompatActivity {
 				openNewGameDialog();
 				isDialog = true;
 				break;
+			case R.id.boardSize:
+				openBoardSizeDialog();
+				isDialog = true;
+				break;
+			case R.id.undo:
+				if (gameVM.undo())
+					puzzleView.invalidate();
+				break;
+			case R.id.redo:
+				if (gameVM.redo())
+					puzzleView.invalidate();
+				break;
+			case R.id.hint:
+				showHint();
+				break;
+			case R.id.pencilMode:
+				item.setChecked(!item.isChecked());
+				gameVM.setPencilMode(item.isChecked());
+				break;
+			case R.id.autoPrune:
+				item.setChecked(!item.isChecked());
+				gameVM.setAutoPrune(item.isChecked());
+				break;
+			case R.id.allowConflicts:
+				item.setChecked(!item.isChecked());
+				gameVM.setAllowConflicts(item.isChecked());
+				break;
+			case R.id.showMetrics:
+				item.setChecked(!item.isChecked());
+				showMetrics(item.isChecked());
+				break;
+			case R.id.dumpMetrics:
+				dumpMetrics();
+				break;
 		}
 		return isDialog;
 	}
 
 	/**
-	 * Instantiates a new puzzle with given difficulty.
+	 * Instantiates a new puzzle with given difficulty. Boards above 9x9 that are not pooled yet
+	 * are generated in the background first.
 	 * */
 	private void start(int diff){
-		Log.d(TAG, "starting new game " + diff);
-		String previous = getPreferences(MODE_PRIVATE).getString(PREF_PUZZLE, gameVM.getEasyPuzzle());
-		gameVM.setPuzzle(diff, previous);
+		DebugLog.d("starting new game ", diff);
+		if (diff != DIFFICULTY_CONTINUE && gameVM.needsGenerating(diff)) {
+			generate(diff);
+			return;
+		}
+		SaveFormat.Snapshot saved = diff == DIFFICULTY_CONTINUE ? loadGame() : null;
+		if (saved != null) {
+			// Already saved as it is, do not write it again
+			gameVM.setSavedPuzzle(diff, saved);
+		} else if (diff == DIFFICULTY_CONTINUE) {
+			// Nothing in the binary format yet, maybe saved by a version without it. Only this
+			// case reads the preferences file on the main thread.
+			SharedPreferences prefs = getPreferences(MODE_PRIVATE);
+			gameVM.setPuzzle(diff, prefs.getString(PREF_PUZZLE, null));
+			autoSaver.save(gameVM.toSnapshot());
+			if (prefs.contains(PREF_PUZZLE)) {
+				autoSaver.flush();
+				prefs.edit().remove(PREF_PUZZLE).apply();
+			}
+		} else {
+			gameVM.setPuzzle(diff, null);
+			// A new game replaces the saved one even before its first move
+			autoSaver.save(gameVM.toSnapshot());
+		}
+		showPuzzle();
+	}
+
+	/**
+	 * Generates a puzzle of the new box size on the generator thread while a progress dialog
+	 * shows, up to seconds for 25x25. The puzzle is dropped if the activity went away meanwhile.
+	 */
+	private void generate(final int diff) {
+		final int boxSize = gameVM.getNewBoxSize();
+		generating = new AlertDialog.Builder(this)
+				.setMessage(R.string.generating_label)
+				.setCancelable(false)
+				.show();
+		((SudokuApp) getApplication()).getGeneratorExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				final int puzzle[] = new Generator(new Random(), boxSize).generate(diff);
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						if (generating == null)
+							return;
+						generating.dismiss();
+						generating = null;
+						gameVM.setGeneratedPuzzle(puzzle);
+						autoSaver.save(gameVM.toSnapshot());
+						showPuzzle();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Puts a new view of the current puzzle on screen
+	 */
+	private void showPuzzle() {
 		gameVM.calculateUsedTiles();
 		Context context = getApplicationContext();
-		puzzleView = new PuzzleView(context, this, new PuzzleViewViewModel(context));
+		PuzzleViewViewModel puzzleVM = new PuzzleViewViewModel(context);
+		puzzleVM.setBoxSize(gameVM.getBoxSize());
+		puzzleView = new PuzzleView(context, this, puzzleVM);
+		puzzleView.setMetrics(gameVM.getMetrics());
 		setContentView(puzzleView);
 		puzzleView.requestFocus();
 	}
 
+	/**
+	 * Starts or stops recording frame and move metrics, drawn as an overlay on the puzzle.
+	 */
+	private void showMetrics(boolean enabled) {
+		Metrics metrics = gameVM.getMetrics();
+		metrics.setEnabled(enabled);
+		if (enabled)
+			metrics.reset();
+		puzzleView.invalidate();
+	}
+
+	/**
+	 * Writes the metrics to logcat and, on a background thread, to metrics.txt in the app's files
+	 * directory.
+	 * @return the thread writing the file
+	 */
+	protected Thread dumpMetrics() {
+		final StringBuilder summary = new StringBuilder();
+		try {
+			gameVM.getMetrics().dump(summary);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+		}
+		DebugLog.i("metrics:\n" + summary);
+		final File target = new File(getFilesDir(), "metrics.txt");
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Writer file = null;
+				try {
+					file = new FileWriter(target);
+					file.write(summary.toString());
+				} catch (IOException e) {
+					DebugLog.e("dumpMetrics", e);
+				} finally {
+					if (file != null) {
+						try {
+							file.close();
+						} catch (IOException ignored) {
+						}
+					}
+				}
+			}
+		}, "MetricsDump");
+		writer.start();
+		return writer;
+	}
+
+	/**
+	 * Pops up board size selection, then asks for the difficulty of the new game. Puzzles of the
+	 * chosen size start generating in the background while the player picks the difficulty.
+	 */
+	private void openBoardSizeDialog() {
+		new AlertDialog.Builder(this)
+				.setTitle(R.string.board_size_title)
+				.setItems(R.array.board_size,
+						new DialogInterface.OnClickListener() {
+							@Override
+							public void onClick(DialogInterface dialog, int choice) {
+								int boxSize = choice + 2;
+								gameVM.setNewBoxSize(boxSize);
+								puzzlePool.prepare(boxSize);
+								openNewGameDialog();
+							}
+						}).show();
+	}
+
 	/**
 	 * Pops up difficulty selection toast and starts a new game.
 	 */
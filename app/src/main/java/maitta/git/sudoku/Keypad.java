@@ -6,20 +6,33 @@ import android.os.Bundle;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.animation.AnimationUtils;
+import android.widget.Button;
+import android.widget.TableLayout;
+import android.widget.TableRow;
 
-public class Keypad extends Dialog {
-	// TODO this string is defined elsewhere
-	protected static final String TAG = "sudoku";
+import androidx.core.content.ContextCompat;
+
+import maitta.git.sudoku.Models.CandidateMasks;
 
-	private final View keys[] = new View[9];
+public class Keypad extends Dialog {
+	private final View keys[];
 	private View keypad;
 	private View cls;
-	private final int useds[];
+	private final int useds; // mask of used tiles, bit (tile - 1) per tile
+	private final int boxSize; // the keys are laid out like one box of the board
 	private final PuzzleView puzzleView;
+	private boolean pencilMode; // keys toggle pencil marks and leave the keypad open
+	public void setPencilMode(boolean pencilMode){ this.pencilMode = pencilMode; }
+
+	public Keypad(Context context, int useds, PuzzleView puzzleView) {
+		this(context, useds, CandidateMasks.BOX_SIZE, puzzleView);
+	}
 
-	public Keypad(Context context, int useds[], PuzzleView puzzleView) {
+	public Keypad(Context context, int useds, int boxSize, PuzzleView puzzleView) {
 		super(context);
 		this.useds = useds;
+		this.boxSize = boxSize;
+		this.keys = new View[CandidateMasks.sizeOf(boxSize)];
 		this.puzzleView = puzzleView;
 	}
 
@@ -86,6 +99,11 @@ public class Keypad extends Dialog {
 
 	private void findViews() {
 		keypad = findViewById(R.id.keypad);
+		cls = findViewById(R.id.keypad_cls);
+		if (boxSize != CandidateMasks.BOX_SIZE) {
+			addKeys((TableLayout) keypad);
+			return;
+		}
 		keys[0] = findViewById(R.id.keypad_1);
 		keys[1] = findViewById(R.id.keypad_2);
 		keys[2] = findViewById(R.id.keypad_3);
@@ -95,7 +113,26 @@ public class Keypad extends Dialog {
 		keys[6] = findViewById(R.id.keypad_7);
 		keys[7] = findViewById(R.id.keypad_8);
 		keys[8] = findViewById(R.id.keypad_9);
-		cls = findViewById(R.id.keypad_cls);
+	}
+
+	/**
+	 * Replaces the 3x3 keys of the layout with boxSize rows of boxSize keys, clear stays last.
+	 */
+	private void addKeys(TableLayout table) {
+		table.removeViews(0, CandidateMasks.BOX_SIZE);
+		final int color = ContextCompat.getColor(getContext(), R.color.keypad_background);
+		for (int r = 0; r < boxSize; r++) {
+			TableRow row = new TableRow(getContext());
+			for (int c = 0; c < boxSize; c++) {
+				int tile = r * boxSize + c + 1;
+				Button key = new Button(getContext());
+				key.setText(String.valueOf(tile));
+				key.setTextColor(color);
+				row.addView(key);
+				keys[tile - 1] = key;
+			}
+			table.addView(row, r);
+		}
 	}
 
 	private void setListeners() {
@@ -109,7 +146,9 @@ public class Keypad extends Dialog {
 		}
 		keypad.setOnClickListener(new View.OnClickListener() {
 			public void onClick(View v) {
-				setResult(0);
+				// A stray tap between the keys must not wipe the notes, only Clear does
+				if (!pencilMode)
+					setResult(0);
 			}
 		});
 		cls.setOnClickListener(new View.OnClickListener() {
@@ -124,25 +163,23 @@ public class Keypad extends Dialog {
 	 * Sets invisibility to all keypad moves that do not apply for current selection.
 	 */
 	private void disableNonPossibleMoves(){
-		for (int element : useds) {
-			if (element != 0)
-				keys[element - 1].setVisibility(View.INVISIBLE);
+		for (int i = 0; i < keys.length; i++) {
+			if ((useds & CandidateMasks.bit(i + 1)) != 0)
+				keys[i].setVisibility(View.INVISIBLE);
 		}
 	}
 	
 	/**
-	 * Sets chosen number to the puzzle.
+	 * Sets chosen number to the puzzle. In pencil mode several marks are usually noted at once,
+	 * only clearing them closes the keypad.
 	 * */
 	private void setResult(int tile) {
 		puzzleView.setSelectedTile(tile, new AnimationUtils());
-		dismiss();
+		if (!pencilMode || tile == 0)
+			dismiss();
 	}
 
 	public boolean isValid(int tile) {
-		for (int t : useds) {
-			if (tile == t)
-				return false;
-		}
-		return true;
+		return tile <= keys.length && (useds & CandidateMasks.bit(tile)) == 0;
 	}
 }
@@ -1,23 +1,25 @@
 package maitta.git.sudoku;
 
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Parcelable;
-import android.util.Log;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
 
+import maitta.git.sudoku.Models.CandidateMasks;
+import maitta.git.sudoku.Models.Metrics;
+import maitta.git.sudoku.ViewModels.GameViewModel;
 import maitta.git.sudoku.ViewModels.PuzzleViewViewModel;
 
 
 public class PuzzleView extends View {
-	private static final String TAG = "sudoku";
 	private final Game game;
 	private final PuzzleViewViewModel puzzleVM;
 
@@ -26,6 +28,23 @@ public class PuzzleView extends View {
 	protected int getSelX(){return selX;}
 	protected int getSelY(){return selY;}
 	private final Rect selRect = new Rect();
+	// Drawing objects reused by every frame, onDraw must not allocate
+	private final Paint background = new Paint();
+	private final Paint foreground = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final Paint hint = new Paint();
+	private final Rect hintRect = new Rect();
+	private final Rect clipRect = new Rect();
+	// Damage tracking, a move only repaints the tile and the peers whose hint, marks or conflict changed
+	private final Rect dirtyRect = new Rect();
+	private final int peerHints[] = new int[3 * CandidateMasks.sizeOf(CandidateMasks.MAX_BOX_SIZE)];
+	private final int peerMarks[] = new int[peerHints.length];
+	private final boolean peerConflicts[] = new boolean[peerHints.length];
+	// Debug metrics, onDraw only reads the clock while they are enabled
+	private Metrics metrics = new Metrics();
+	private final Paint overlay = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final Rect overlayRect = new Rect();
+	private static final int OVERLAY_LINES = 3;
+	public void setMetrics(Metrics metrics){ this.metrics = metrics; }
 	
 	protected static final String SELX = "selX";
 	protected static final String SELY = "selY";
@@ -34,7 +53,7 @@ public class PuzzleView extends View {
 	@Override
 	protected Parcelable onSaveInstanceState() {
 		Parcelable p = super.onSaveInstanceState();
-		Log.d(TAG, "onSaveInstanceState");
+		DebugLog.d("onSaveInstanceState");
 		Bundle bundle = new Bundle();
 		bundle.putInt(SELX, selX);
 		bundle.putInt(SELY, selY);
@@ -44,7 +63,7 @@ public class PuzzleView extends View {
 
 	@Override
 	protected void onRestoreInstanceState(Parcelable state) {
-		Log.d(TAG, "onRestoreInstanceState");
+		DebugLog.d("onRestoreInstanceState");
 		Bundle bundle = (Bundle) state;
 		select(bundle.getInt(SELX), bundle.getInt(SELY));
 		super.onRestoreInstanceState(bundle.getParcelable(VIEW_STATE));
@@ -62,30 +81,91 @@ public class PuzzleView extends View {
 
 	@Override
 	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-		puzzleVM.setWidth(w / 9f);
-		puzzleVM.setHeight(h / 9f);
+		puzzleVM.setWidth(w / (float) puzzleVM.getSize());
+		puzzleVM.setHeight(h / (float) puzzleVM.getSize());
 		puzzleVM.setRect(selX, selY, selRect);
+		puzzleVM.styleNumbers(foreground);
+		overlay.setTextSize(h / 40f);
+		overlayRect.set(0, 0, w, (int) ((OVERLAY_LINES + 0.5f) * overlay.getFontSpacing()));
 		super.onSizeChanged(w, h, oldw, oldh);
 	}
+
+	@Override
+	protected void onConfigurationChanged(Configuration newConfig) {
+		super.onConfigurationChanged(newConfig);
+		// Theme may have changed, resolve the colors again
+		puzzleVM.loadColors();
+		puzzleVM.styleNumbers(foreground);
+		invalidate();
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		releaseCaches();
+	}
+
+	/**
+	 * Drop offscreen layers, they are rendered again on the next frame.
+	 */
+	protected void releaseCaches() {
+		puzzleVM.releaseBoardLayer();
+		puzzleVM.releaseGlyphs();
+	}
 	
+	/**
+	 * Layers are painted back to front: static board, hints, selection, conflicts, marks, digits.
+	 * Digits go last so that the opaque selection and hint colors never cover them and each one is
+	 * drawn once. Conflicts are translucent and go over the selection so that both show.
+	 * Every layer has its own damage source: the board layer cache, the peers of a move and the
+	 * selected tile.
+	 */
 	@Override
 	protected void onDraw(Canvas canvas) {
-		Paint background = new Paint();
-		puzzleVM.drawBackground(canvas, background, getWidth(), getHeight());
-		puzzleVM.drawMinorGridLines(canvas, getWidth(), getHeight());
-		puzzleVM.drawMajorGridLines(canvas, getWidth(), getHeight());
-		Paint foreground = new Paint(Paint.ANTI_ALIAS_FLAG);
-		puzzleVM.styleNumbers(foreground);
-		puzzleVM.drawNumbers(canvas, foreground, game.getGameVM());
-		puzzleVM.drawHints(canvas, game.getGameVM(),  new Rect(), new Paint());
-		puzzleVM.drawSelection(canvas);
-		// Background numbers need to be redrawn at this point for the selection to appear on screen.
+		final boolean measured = metrics.isEnabled();
+		long start = 0;
+		if (measured)
+			start = System.nanoTime();
+		if (!canvas.getClipBounds(clipRect))
+			clipRect.set(0, 0, getWidth(), getHeight());
+		puzzleVM.clipCells(clipRect);
+		puzzleVM.drawBoardLayer(canvas, background, getWidth(), getHeight());
+		puzzleVM.drawHints(canvas, game.getGameVM(), hintRect, hint);
+		puzzleVM.drawSelection(canvas, selRect);
+		puzzleVM.drawConflicts(canvas, game.getGameVM(), hintRect, hint);
+		puzzleVM.drawMarks(canvas, foreground, game.getGameVM());
 		puzzleVM.drawNumbers(canvas, foreground, game.getGameVM());
+		if (measured) {
+			metrics.getFrameTimes().record(System.nanoTime() - start);
+			drawOverlay(canvas);
+		}
+	}
+
+	/**
+	 * Draws the metrics summary over the top of the board. Only runs while metrics are enabled,
+	 * after the frame has been measured.
+	 */
+	protected void drawOverlay(Canvas canvas) {
+		overlay.setColor(0xC0000000);
+		canvas.drawRect(overlayRect, overlay);
+		overlay.setColor(0xFFFFFFFF);
+		final float line = overlay.getFontSpacing();
+		canvas.drawText(Metrics.describe("frame ns", metrics.getFrameTimes()), line / 2, line, overlay);
+		canvas.drawText(Metrics.describe("move ns", metrics.getMoveTimes()), line / 2, 2 * line, overlay);
+		canvas.drawText(Metrics.describe("rebuild ns", metrics.getRebuildTimes()), line / 2, 3 * line, overlay);
+	}
+
+	/**
+	 * Keeps the overlay current when only a few tiles are repainted.
+	 */
+	private void invalidateOverlay() {
+		if (metrics.isEnabled())
+			invalidate(overlayRect);
 	}
 	
 	@Override
 	public boolean onKeyDown(int keyCode, KeyEvent event) {
-		Log.d(TAG, "onKeyDown: keycode=" + keyCode + ", event=" + event);
+		DebugLog.d("onKeyDown: ", event);
 		switch (keyCode) {
 		// Handles D-pad input (directional pad)
 		case KeyEvent.KEYCODE_DPAD_UP:
@@ -133,6 +213,10 @@ public class PuzzleView extends View {
 		case KeyEvent.KEYCODE_9:
 			setSelectedTile(9);
 			break;
+		// Switches between entering values and pencil marks
+		case KeyEvent.KEYCODE_P:
+			game.getGameVM().setPencilMode(!game.getGameVM().isPencilMode());
+			break;
 		// Handles center button on D-Pad (Ok button)
 		case KeyEvent.KEYCODE_ENTER:
 		case KeyEvent.KEYCODE_DPAD_CENTER:
@@ -153,7 +237,7 @@ public class PuzzleView extends View {
 		select((int) (event.getX() / puzzleVM.getWidth()),
 				(int) (event.getY() / puzzleVM.getHeight()));
 		game.showKeypadOrError(selX, selY);
-		Log.d(TAG, "onTouchEvent: x " + selX + ", y " + selY);
+		DebugLog.d("onTouchEvent: ", selX, selY);
 		return true;
 	}
 
@@ -165,12 +249,21 @@ public class PuzzleView extends View {
 		setSelectedTile(tile, new AnimationUtils());
 	}
 
+	/**
+	 * Fills the selected tile with the value, or toggles its pencil mark in pencil mode
+	 */
 	public void setSelectedTile(int tile, AnimationUtils utils) {
-		if (game.getGameVM().setTileIfValid(selX, selY, tile)) {
-			invalidate();
+		GameViewModel gameVM = game.getGameVM();
+		forEachPeer(gameVM, false);
+		boolean applied = gameVM.isPencilMode() ? gameVM.toggleMark(selX, selY, tile)
+				: gameVM.setTileIfValid(selX, selY, tile);
+		if (applied) {
+			invalidate(selRect);
+			forEachPeer(gameVM, true);
+			invalidateOverlay();
 		} else {
 			// Number is not valid for this tile
-			Log.d(TAG, "setSelectedTile: invalid: " + tile);
+			DebugLog.d("setSelectedTile: invalid: ", tile);
 			startAnimation(loadAnimation(utils));
 		}
 	}
@@ -183,11 +276,44 @@ public class PuzzleView extends View {
 		return utils.loadAnimation(game, R.anim.shake);
 	}
 	
+	/**
+	 * Walks the row, column and box of the selected tile. Before a move it remembers their hints
+	 * and marks, after the move it invalidates the ones that changed.
+	 */
+	private void forEachPeer(GameViewModel gameVM, boolean invalidateChanged) {
+		final int box = puzzleVM.getBoxSize();
+		final int boxX = selX - selX % box;
+		final int boxY = selY - selY % box;
+		for (int k = 0; k < puzzleVM.getSize(); k++) {
+			peer(gameVM, 3 * k, k, selY, invalidateChanged);
+			peer(gameVM, 3 * k + 1, selX, k, invalidateChanged);
+			peer(gameVM, 3 * k + 2, boxX + k % box, boxY + k / box, invalidateChanged);
+		}
+	}
+
+	private void peer(GameViewModel gameVM, int index, int x, int y, boolean invalidateChanged) {
+		int level = puzzleVM.getHintLevel(gameVM, x, y);
+		int marks = gameVM.getMarks(x, y);
+		boolean conflict = gameVM.isConflict(x, y);
+		if (!invalidateChanged) {
+			peerHints[index] = level;
+			peerMarks[index] = marks;
+			peerConflicts[index] = conflict;
+		} else if (peerHints[index] != level || peerMarks[index] != marks
+				|| peerConflicts[index] != conflict) {
+			puzzleVM.setRect(x, y, dirtyRect);
+			invalidate(dirtyRect);
+		}
+	}
+	
 	protected void select(int x, int y) {
-		invalidate();
-		selX = Math.min(Math.max(x, 0), 8);
-		selY = Math.min(Math.max(y, 0), 8);
+		// Repaint only the tile losing the selection and the one getting it
+		invalidate(selRect);
+		final int last = puzzleVM.getSize() - 1;
+		selX = Math.min(Math.max(x, 0), last);
+		selY = Math.min(Math.max(y, 0), last);
 		puzzleVM.setRect(selX, selY, selRect);
-		invalidate();
+		invalidate(selRect);
+		invalidateOverlay();
 	}
 }
@@ -0,0 +1,49 @@
+package maitta.git.sudoku;
+
+import static maitta.git.sudoku.ViewModels.GameViewModel.SAVE_FILE;
+
+import android.app.Application;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import maitta.git.sudoku.Models.AutoSaver;
+import maitta.git.sudoku.Models.PuzzlePool;
+
+/**
+ * Holds what has to outlive a Game activity, e.g. across rotations: the puzzles generated in the
+ * background, the thread generating a puzzle someone waits for and the saver, whose last snapshot
+ * may not be on disk yet when the next activity continues the game. Activities only pause and
+ * resume the pool.
+ */
+public class SudokuApp extends Application {
+	private final PuzzlePool puzzlePool = new PuzzlePool();
+	public PuzzlePool getPuzzlePool(){ return puzzlePool; }
+	/**
+	 * Generates the puzzles a player waits for, the pool's thread runs at the lowest priority
+	 */
+	private final ExecutorService generatorExecutor = Executors.newSingleThreadExecutor(
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Generator");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	public ExecutorService getGeneratorExecutor(){ return generatorExecutor; }
+	private AutoSaver autoSaver;
+	public AutoSaver getAutoSaver(){ return autoSaver; }
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		autoSaver = new AutoSaver(getSaveFile());
+	}
+
+	public File getSaveFile() {
+		return new File(getFilesDir(), SAVE_FILE);
+	}
+}
@@ -1,37 +1,71 @@
 package maitta.git.sudoku.ViewModels;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.util.Log;
 
 import androidx.core.content.ContextCompat;
 
+import maitta.git.sudoku.DebugLog;
+import maitta.git.sudoku.Models.CandidateMasks;
 import maitta.git.sudoku.R;
 
 public class PuzzleViewViewModel {
-    private static final String TAG = "sudoku";
-    private final Rect selRect = new Rect();
     private Canvas canvas;
     private Context context;
     private Board board;
     private float width; // width of one tile
     private float height; // height of one tile
-    public static final int numberOfClusters = 9;
-    public static final int numberOfTilesInCluster = 9;
-    public static final int numberOfMoves = 9;
-    public static final int numberOfClustersInRow = 3;
+    // Colors and paints are resolved once and refreshed by loadColors, never per frame
+    private int backgroundColor;
+    private int foregroundColor;
+    private int marksColor;
+    private final Paint selected = new Paint();
+    private final int hintColors[] = new int[3];
+    private int conflictColor;
+    private float numberOffsetY; // baseline offset that centers numbers, set by styleNumbers
+    private Bitmap boardLayer; // background and grid lines, rebuilt only when the size or colors change
+    // Values 1 to size rasterized once per tile size, drawNumbers blits from it
+    private Bitmap glyphs;
+    private int glyphWidth, glyphHeight;
+    private final Rect glyphSrc = new Rect();
+    private final Rect glyphDst = new Rect();
+    // Same values at pencil mark size, a box of marks fills a tile like the keypad
+    private Bitmap markGlyphs;
+    private int markWidth, markHeight;
+    private final Paint marks = new Paint(Paint.ANTI_ALIAS_FLAG);
+    // Tiles per box side and per row, every loop and line count follows them
+    private int boxSize = CandidateMasks.BOX_SIZE;
+    private int size = CandidateMasks.SIZE;
+    // Cells inside the canvas clip, numbers and hints outside of it are not drawn
+    private int firstX = 0, lastX = size - 1;
+    private int firstY = 0, lastY = size - 1;
+
+    public int getBoxSize(){ return boxSize; }
+    public int getSize(){ return size; }
+    /**
+     * Switch to a board of another box size, the cached layers are rendered again.
+     */
+    public void setBoxSize(int boxSize){
+        this.boxSize = boxSize;
+        this.size = CandidateMasks.sizeOf(boxSize);
+        firstX = firstY = 0;
+        lastX = lastY = size - 1;
+        releaseBoardLayer();
+        releaseGlyphs();
+    }
 
     public float getWidth(){ return this.width; }
     public void setWidth(float width){
         this.width = width;
-        Log.d(TAG, "PuzzleVM size changed: width " + width);
+        DebugLog.d("PuzzleVM size changed: width ", width);
     }
     public float getHeight(){ return this.height; }
     public void setHeight(float height){
         this.height = height;
-        Log.d(TAG, "PuzzleVM size changed: height " + height);
+        DebugLog.d("PuzzleVM size changed: height ", height);
     }
 
     public class Board{
@@ -55,20 +89,61 @@ public class PuzzleViewViewModel {
 
     public PuzzleViewViewModel(Context context) {
         this.context = context;
+        loadColors();
+    }
+
+    /**
+     * Resolve every color used while drawing. Call again when the theme changes.
+     */
+    public void loadColors() {
+        backgroundColor = ContextCompat.getColor(context, R.color.game_background);
+        foregroundColor = ContextCompat.getColor(context, R.color.puzzle_foreground);
+        marksColor = ContextCompat.getColor(context, R.color.puzzle_marks);
+        selected.setColor(ContextCompat.getColor(context, R.color.puzzle_selected_tile));
+        hintColors[0] = ContextCompat.getColor(context, R.color.puzzle_hint_no_move);
+        hintColors[1] = ContextCompat.getColor(context, R.color.puzzle_hint_one_move);
+        hintColors[2] = ContextCompat.getColor(context, R.color.puzzle_hint_two_moves);
+        conflictColor = ContextCompat.getColor(context, R.color.puzzle_conflict);
+        board = drawBoard();
+        // The cached board was painted with the old colors
+        releaseBoardLayer();
+    }
+
+    /**
+     * Blit the background and grid lines, rendering them offscreen first if the size or colors changed.
+     */
+    public void drawBoardLayer(Canvas canvas, Paint background, int screenWidth, int screenHeight) {
+        if (screenWidth <= 0 || screenHeight <= 0)
+            return;
+        if (boardLayer == null || boardLayer.getWidth() != screenWidth
+                || boardLayer.getHeight() != screenHeight) {
+            releaseBoardLayer();
+            boardLayer = Bitmap.createBitmap(screenWidth, screenHeight, Bitmap.Config.ARGB_8888);
+            Canvas layer = new Canvas(boardLayer);
+            drawBackground(layer, background, screenWidth, screenHeight);
+            drawMinorGridLines(layer, screenWidth, screenHeight);
+            drawMajorGridLines(layer, screenWidth, screenHeight);
+        }
+        canvas.drawBitmap(boardLayer, 0, 0, null);
+    }
+
+    /**
+     * Free the cached board, it is rendered again by the next drawBoardLayer.
+     */
+    public void releaseBoardLayer() {
+        if (boardLayer != null) {
+            boardLayer.recycle();
+            boardLayer = null;
+        }
     }
 
     public void drawBackground(Canvas canvas, Paint background, int screenWidth, int screenHeight) {
-        background.setColor(ContextCompat.getColor(context, R.color.game_background));
+        background.setColor(backgroundColor);
         canvas.drawRect(0, 0, screenWidth, screenHeight, background);
     }
 
     public void drawMajorGridLines(Canvas canvas, int screenWidth, int screenHeight) {
-        if(this.board == null){
-            board = drawBoard();
-        }
-        for (int i = 0; i < numberOfClusters; i++) {
-            if (i % numberOfClustersInRow != 0)
-                continue;
+        for (int i = 0; i < size; i += boxSize) {
             canvas.drawLine(0, i * height, screenWidth, i * height, board.getDark());
             canvas.drawLine(0, i * height + 1, screenWidth, i * height + 1,
                     board.getHighlight());
@@ -79,10 +154,7 @@ public class PuzzleViewViewModel {
     }
 
     public void drawMinorGridLines(Canvas canvas, int screenWidth, int screenHeight) {
-        if(this.board == null){
-            board = drawBoard();
-        }
-        for (int i = 0; i < numberOfTilesInCluster; i++) {
+        for (int i = 0; i < size; i++) {
             canvas.drawLine(0, i * height, screenWidth, i * height, board.getLight());
             canvas.drawLine(0, i * height + 1, screenWidth, i * height + 1,
                     board.getHighlight());
@@ -92,22 +164,55 @@ public class PuzzleViewViewModel {
         }
     }
 
-    public void drawSelection(Canvas canvas) {
+    public void drawSelection(Canvas canvas, Rect selRect) {
         if(canvas == null) throw new IllegalArgumentException("Canvas cannot be null");
-        int selectedColor = ContextCompat.getColor(context, R.color.puzzle_selected_tile);
-        Log.d(TAG, "selRect=" + selRect);
-        Paint selected = new Paint();
-        selected.setColor(selectedColor);
         canvas.drawRect(selRect, selected);
     }
 
+    /**
+     * Limit drawNumbers and drawHints to the cells touched by the dirty region of the next frame.
+     */
+    public void clipCells(Rect clip) {
+        if (width <= 0 || height <= 0) {
+            firstX = 0;
+            lastX = size - 1;
+            firstY = 0;
+            lastY = size - 1;
+            return;
+        }
+        firstX = toCell(clip.left / width, size);
+        lastX = toCell((clip.right - 1) / width, size);
+        firstY = toCell(clip.top / height, size);
+        lastY = toCell((clip.bottom - 1) / height, size);
+    }
+
+    private static int toCell(float position, int cells) {
+        return Math.min(Math.max((int) position, 0), cells - 1);
+    }
+
+    /**
+     * Index into the hint colors for a tile, or -1 if the tile has no hint.
+     */
+    public int getHintLevel(GameViewModel gameVM, int x, int y) {
+        int movesLeft = size - Integer.bitCount(gameVM.getUsedMask(x, y));
+        return movesLeft < hintColors.length ? movesLeft : -1;
+    }
+
+    /**
+     * Style the numbers paint for the current tile size. Call again when the size changes.
+     */
     public void styleNumbers(Paint foreground) {
-        int color = ContextCompat.getColor(context, R.color.puzzle_foreground);
-        foreground.setColor(color);
+        foreground.setColor(foregroundColor);
         foreground.setStyle(Paint.Style.FILL);
-        foreground.setTextSize(height * 0.75f);
+        // Two digit values need narrower glyphs to fit a tile
+        foreground.setTextSize(height * (size > 9 ? 0.55f : 0.75f));
         foreground.setTextScaleX(width / height);
         foreground.setTextAlign(Paint.Align.CENTER);
+        // Centering in Y: measure ascent/descent first
+        Paint.FontMetrics fm = foreground.getFontMetrics();
+        numberOffsetY = getHeight() / 2 - (fm.ascent + fm.descent) / 2;
+        // Glyphs were rasterized with the old size and style
+        releaseGlyphs();
     }
 
     public Board drawBoard(){
@@ -124,16 +229,16 @@ public class PuzzleViewViewModel {
 
     /**
      * TODO decide whether or not to include the hints as an optional or fixed thing.
-     * Picks a hint color based on #moves left
+     * Picks a hint color based on #moves left, givens never get one
      * @param canvas
      */
     public void drawHints(Canvas canvas, GameViewModel gameVM, Rect r, Paint hint) {
-        int c[] = { ContextCompat.getColor(context, R.color.puzzle_hint_no_move),
-                ContextCompat.getColor(context, R.color.puzzle_hint_one_move),
-                ContextCompat.getColor(context, R.color.puzzle_hint_two_moves) };
-        for (int i = 0; i < numberOfClusters; i++) {
-            for (int j = 0; j < numberOfTilesInCluster; j++) {
-                int movesLeft = numberOfMoves - gameVM.getUsedTiles(i, j).length;
+        final int c[] = hintColors;
+        for (int i = firstX; i <= lastX; i++) {
+            for (int j = firstY; j <= lastY; j++) {
+                if (gameVM.isGiven(i, j))
+                    continue;
+                int movesLeft = size - Integer.bitCount(gameVM.getUsedMask(i, j));
                 if (movesLeft < c.length) {
                     setRect(i, j, r);
                     hint.setColor(c[movesLeft]);
@@ -143,22 +248,118 @@ public class PuzzleViewViewModel {
         }
     }
 
+    /**
+     * Shade the tiles that clash with a peer. Walks the conflict set of the game, not the board,
+     * so a frame without conflicts costs nothing.
+     */
+    public void drawConflicts(Canvas canvas, GameViewModel gameVM, Rect r, Paint paint) {
+        paint.setColor(conflictColor);
+        for (int i = gameVM.nextConflict(0); i >= 0; i = gameVM.nextConflict(i + 1)) {
+            int x = i % size;
+            int y = i / size;
+            if (x < firstX || x > lastX || y < firstY || y > lastY)
+                continue;
+            setRect(x, y, r);
+            canvas.drawRect(r, paint);
+        }
+    }
+
+    /**
+     * Blit every digit from the glyph atlas, rasterizing it first if the tile size or style changed.
+     */
     public void drawNumbers(Canvas canvas, Paint foreground, GameViewModel gameVM) {
-        // Draw the number in the center of the tile
-        Paint.FontMetrics fm = foreground.getFontMetrics();
+        if (glyphs == null && !buildGlyphs(foreground))
+            return;
+        for (int i = firstX; i <= lastX; i++) {
+            for (int j = firstY; j <= lastY; j++) {
+                int tile = gameVM.getTile(i, j);
+                if (tile == 0)
+                    continue;
+                glyphSrc.set((tile - 1) * glyphWidth, 0, tile * glyphWidth, glyphHeight);
+                glyphDst.set((int) (i * width), (int) (j * height),
+                        (int) (i * width) + glyphWidth, (int) (j * height) + glyphHeight);
+                canvas.drawBitmap(glyphs, glyphSrc, glyphDst, null);
+            }
+        }
+    }
+
+    /**
+     * Rasterize values 1 to size side by side, each one placed as drawText would place it in a tile.
+     */
+    private boolean buildGlyphs(Paint foreground) {
+        glyphWidth = (int) Math.ceil(width);
+        glyphHeight = (int) Math.ceil(height);
+        if (glyphWidth <= 0 || glyphHeight <= 0)
+            return false;
+        glyphs = Bitmap.createBitmap(size * glyphWidth, glyphHeight, Bitmap.Config.ARGB_8888);
+        Canvas atlas = new Canvas(glyphs);
         // Centering in X: use alignment (and X at midpoint)
-        final float x = getWidth() / 2;
-        // Centering in Y: measure ascent/descent first
-        final float y = getHeight() / 2 - (fm.ascent + fm.descent) / 2;
+        final float x = width / 2;
+        for (int tile = 1; tile <= size; tile++) {
+            atlas.drawText(String.valueOf(tile), (tile - 1) * glyphWidth + x, numberOffsetY, foreground);
+        }
+        return true;
+    }
 
-        for (int i = 0; i < numberOfClusters; i++) {
-            for (int j = 0; j < numberOfTilesInCluster; j++) {
-                canvas.drawText(gameVM.getTileString(i, j), i * getWidth() + x, j
-                        * getHeight() + y, foreground);
+    /**
+     * Blit the pencil marks of the empty tiles, value v at column (v - 1) % boxSize and row
+     * (v - 1) / boxSize of the tile. Only the set bits are visited, a 9x9 board draws at most
+     * 729 marks.
+     */
+    public void drawMarks(Canvas canvas, Paint foreground, GameViewModel gameVM) {
+        if (markGlyphs == null && !buildMarkGlyphs(foreground))
+            return;
+        for (int i = firstX; i <= lastX; i++) {
+            for (int j = firstY; j <= lastY; j++) {
+                if (gameVM.getTile(i, j) != 0)
+                    continue;
+                for (int m = gameVM.getMarks(i, j); m != 0; m &= m - 1) {
+                    int v = Integer.numberOfTrailingZeros(m);
+                    int left = (int) (i * width) + v % boxSize * markWidth;
+                    int top = (int) (j * height) + v / boxSize * markHeight;
+                    glyphSrc.set(v * markWidth, 0, (v + 1) * markWidth, markHeight);
+                    glyphDst.set(left, top, left + markWidth, top + markHeight);
+                    canvas.drawBitmap(markGlyphs, glyphSrc, glyphDst, null);
+                }
             }
         }
     }
 
+    /**
+     * Rasterize values 1 to size at a box size fraction of the numbers, centered in their cell.
+     */
+    private boolean buildMarkGlyphs(Paint foreground) {
+        markWidth = (int) (width / boxSize);
+        markHeight = (int) (height / boxSize);
+        if (markWidth <= 0 || markHeight <= 0)
+            return false;
+        marks.set(foreground);
+        marks.setColor(marksColor);
+        marks.setTextSize(foreground.getTextSize() / boxSize);
+        Paint.FontMetrics fm = marks.getFontMetrics();
+        final float y = markHeight / 2f - (fm.ascent + fm.descent) / 2;
+        markGlyphs = Bitmap.createBitmap(size * markWidth, markHeight, Bitmap.Config.ARGB_8888);
+        Canvas atlas = new Canvas(markGlyphs);
+        for (int tile = 1; tile <= size; tile++) {
+            atlas.drawText(String.valueOf(tile), (tile - 1) * markWidth + markWidth / 2f, y, marks);
+        }
+        return true;
+    }
+
+    /**
+     * Free the glyph atlases, they are rasterized again by the next drawNumbers and drawMarks.
+     */
+    public void releaseGlyphs() {
+        if (glyphs != null) {
+            glyphs.recycle();
+            glyphs = null;
+        }
+        if (markGlyphs != null) {
+            markGlyphs.recycle();
+            markGlyphs = null;
+        }
+    }
+
     public void setRect(int x, int y, Rect rect) {
         float width = getWidth();
         float height = getHeight();
@@ -0,0 +1,46 @@
+package maitta.git.sudoku;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.util.List;
+
+@Config(sdk = 29)
+@RunWith(RobolectricTestRunner.class)
+public class DebugLogTest {
+    @Before
+    public void setup() {
+        ShadowLog.reset();
+    }
+
+    @Test
+    public void debugMessagesUseTag() {
+        // Unit tests run against the debug build
+        assertTrue(DebugLog.ENABLED);
+        DebugLog.d("onTouchEvent: ", 3, 4);
+        DebugLog.d("size ", 1.5f);
+        List<ShadowLog.LogItem> logs = ShadowLog.getLogsForTag(DebugLog.TAG);
+        assertEquals(2, logs.size());
+        assertEquals(Log.DEBUG, logs.get(0).type);
+        assertEquals("onTouchEvent: 3, 4", logs.get(0).msg);
+        assertEquals("size 1.5", logs.get(1).msg);
+    }
+
+    @Test
+    public void errorsKeepThrowable() {
+        Exception error = new Exception("disk full");
+        DebugLog.e("dumpMetrics", error);
+        ShadowLog.LogItem log = ShadowLog.getLogsForTag(DebugLog.TAG).get(0);
+        assertEquals(Log.ERROR, log.type);
+        assertEquals(error, log.throwable);
+    }
+}
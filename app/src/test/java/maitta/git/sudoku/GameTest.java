@@ -4,23 +4,36 @@ import static junit.framework.Assert.assertFalse;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
 import static org.robolectric.Shadows.shadowOf;
+import static maitta.git.sudoku.ViewModels.GameViewModel.PREF_PUZZLE;
+import static maitta.git.sudoku.ViewModels.GameViewModel.SAVE_FILE;
 
 import android.app.Dialog;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.view.Menu;
 
 import androidx.appcompat.app.AlertDialog;
+import androidx.test.core.app.ApplicationProvider;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowActivity;
 import org.robolectric.shadows.ShadowAlertDialog;
+import org.robolectric.shadows.ShadowToast;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
+import maitta.git.sudoku.Models.Grader;
+import maitta.git.sudoku.Models.SaveFormat;
+import maitta.git.sudoku.ViewModels.GameViewModel;
+
 @Config(sdk = 29)
 @RunWith(RobolectricTestRunner.class)
 public class GameTest {
@@ -28,6 +41,8 @@ public class GameTest {
     private static ShadowActivity shadowGame;
     // Internal ID not shown to the user.
     private static final String menuTitle = "New Game";
+    private static final String easyPuzzle = "000260701680070090190004500"
+            + "820100040004602900050003028" + "009300074040050036703018000";
 
     @Before
     public void setMainActivity() {
@@ -42,6 +57,126 @@ public class GameTest {
         assertTrue(menu.hasVisibleItems());
         assertEquals(menu.findItem(R.id.newGame).isVisible(), true);
         assertEquals(menu.getItem(0).getTitle(), menuTitle);
+        // Debug builds only
+        assertEquals(menu.findItem(R.id.showMetrics).isVisible(), BuildConfig.DEBUG);
+        assertEquals(menu.findItem(R.id.dumpMetrics).isVisible(), BuildConfig.DEBUG);
+    }
+
+    @Test
+    public void onPauseSavesBinaryGame() throws Exception {
+        ActivityController<Game> controller = Robolectric.buildActivity(Game.class).create().resume();
+        Game paused = controller.get();
+        GameViewModel gameVM = paused.getGameVM();
+        gameVM.setTile(0, 0, 0);
+        controller.pause();
+        // Writes are queued on the saver thread, wait for them
+        paused.getAutoSaver().flush().get();
+        assertTrue(Arrays.equals(gameVM.getPuzzle(), SaveFormat.read(paused.getSaveFile()).getTiles()));
+    }
+
+    @Test
+    public void moveIsSavedInBackground() throws Exception {
+        Game playing = Robolectric.buildActivity(Game.class).create().resume().get();
+        GameViewModel gameVM = playing.getGameVM();
+        int empty = 0;
+        while (gameVM.isGiven(empty % 9, empty / 9))
+            empty++;
+        int value = Integer.numberOfTrailingZeros(~gameVM.getUsedMask(empty % 9, empty / 9)) + 1;
+        assertTrue(gameVM.setTileIfValid(empty % 9, empty / 9, value));
+        playing.getAutoSaver().flush().get();
+        assertEquals(value, SaveFormat.read(playing.getSaveFile()).getTiles()[empty]);
+    }
+
+    @Test
+    public void recreateContinuesQueuedSave() {
+        ActivityController<Game> controller = Robolectric.buildActivity(Game.class).create().resume();
+        GameViewModel gameVM = controller.get().getGameVM();
+        int empty = 0;
+        while (gameVM.isGiven(empty % 9, empty / 9))
+            empty++;
+        int value = Integer.numberOfTrailingZeros(~gameVM.getUsedMask(empty % 9, empty / 9)) + 1;
+        assertTrue(gameVM.setTileIfValid(empty % 9, empty / 9, value));
+        // Rotating right away, the move may not be written yet
+        controller.recreate();
+        Game recreated = controller.get();
+        assertEquals(value, recreated.getGameVM().getTile(empty % 9, empty / 9));
+        assertTrue(recreated.getAutoSaver() == ((SudokuApp) recreated.getApplication()).getAutoSaver());
+    }
+
+    @Test
+    public void startMigratesPreferencesSave() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        new File(context.getFilesDir(), SAVE_FILE).delete();
+        SharedPreferences prefs = context.getSharedPreferences("Game", Context.MODE_PRIVATE);
+        prefs.edit().putString(PREF_PUZZLE, easyPuzzle).commit();
+        Game migrated = Robolectric.buildActivity(Game.class).create().get();
+        GameViewModel gameVM = migrated.getGameVM();
+        assertEquals(easyPuzzle, gameVM.toPuzzleString(gameVM.getPuzzle()));
+        // The old save is dropped once the binary one is written
+        migrated.getAutoSaver().flush().get();
+        assertTrue(Arrays.equals(gameVM.getPuzzle(), SaveFormat.read(migrated.getSaveFile()).getTiles()));
+        assertFalse(prefs.contains(PREF_PUZZLE));
+    }
+
+    @Test
+    public void showKeypadRefusesGivens() {
+        Game playing = Robolectric.buildActivity(Game.class).create().get();
+        GameViewModel gameVM = playing.getGameVM();
+        int given = 0;
+        while (!gameVM.isGiven(given % 9, given / 9))
+            given++;
+        playing.showKeypadOrError(given % 9, given / 9);
+        assertEquals(playing.getString(R.string.given_tile_label), ShadowToast.getTextOfLatestToast());
+    }
+
+    @Test
+    public void undoMenuTakesBackMove() {
+        Game playing = Robolectric.buildActivity(Game.class).create().visible().get();
+        GameViewModel gameVM = playing.getGameVM();
+        Grader.Hint hint = gameVM.getHint();
+        int x = hint.getCell() % 9;
+        int y = hint.getCell() / 9;
+        assertTrue(gameVM.setTileIfValid(x, y, hint.getValue()));
+        Menu menu = shadowOf(playing).getOptionsMenu();
+        playing.onOptionsItemSelected(menu.findItem(R.id.undo));
+        assertEquals(0, gameVM.getTile(x, y));
+        playing.onOptionsItemSelected(menu.findItem(R.id.redo));
+        assertEquals(hint.getValue(), gameVM.getTile(x, y));
+    }
+
+    @Test
+    public void hintSelectsItsTile() {
+        Game playing = Robolectric.buildActivity(Game.class).create().get();
+        Grader.Hint hint = playing.getGameVM().getHint();
+        playing.showHint();
+        PuzzleView view = playing.findViewById(R.id.puzzleId);
+        assertEquals(hint.getCell(), view.getSelY() * 9 + view.getSelX());
+        assertTrue(ShadowToast.getTextOfLatestToast().endsWith(": " + hint.getValue()));
+    }
+
+    @Test
+    public void hintSelectsMistake() {
+        Game playing = Robolectric.buildActivity(Game.class).create().get();
+        GameViewModel gameVM = playing.getGameVM();
+        Grader.Hint hint = gameVM.getHint();
+        int x = hint.getCell() % 9;
+        int y = hint.getCell() / 9;
+        // Only the hinted value fits a naked single, allow the wrong one
+        gameVM.setAllowConflicts(true);
+        assertTrue(gameVM.setTileIfValid(x, y, hint.getValue() % 9 + 1));
+        gameVM.setAllowConflicts(false);
+        playing.showHint();
+        PuzzleView view = playing.findViewById(R.id.puzzleId);
+        assertEquals(hint.getCell(), view.getSelY() * 9 + view.getSelX());
+        assertEquals(playing.getString(R.string.mistake_label), ShadowToast.getTextOfLatestToast());
+    }
+
+    @Test
+    public void dumpMetricsWritesFile() throws Exception {
+        game.dumpMetrics().join();
+        File dump = new File(game.getFilesDir(), "metrics.txt");
+        assertTrue(dump.exists());
+        assertTrue(dump.length() > 0);
     }
 
     @Test
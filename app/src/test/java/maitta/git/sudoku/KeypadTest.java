@@ -2,6 +2,7 @@ package maitta.git.sudoku;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -26,6 +27,8 @@ import org.robolectric.annotation.Config;
 import java.util.Arrays;
 import java.util.Collection;
 
+import maitta.git.sudoku.Models.CandidateMasks;
+
 @RunWith(Enclosed.class)
 public class KeypadTest{
     @Config(sdk = 29)
@@ -49,7 +52,7 @@ public class KeypadTest{
             }
         }
 
-        Keypad getKeypad(int[] useds){
+        Keypad getKeypad(int useds){
             return new Keypad(context, useds, puzzleView);
         }
 
@@ -77,14 +80,14 @@ public class KeypadTest{
 
         @Test
         public void onKeyDownIsValid(){
-            Keypad keypad = Mockito.spy(getKeypad(new int[]{}));
+            Keypad keypad = Mockito.spy(getKeypad(0));
             keypad.onKeyDown(inputKeyCode, keyEvent);
             verify(keypad, times(times)).isValid(anyInt());
         }
 
         @Test
         public void resultIsSet(){
-            Keypad keypad = Mockito.spy(getKeypad(new int[]{}));
+            Keypad keypad = Mockito.spy(getKeypad(0));
             when(keypad.isValid(inputKeyCode)).thenReturn(true);
             keypad.onKeyDown(inputKeyCode, keyEvent);
             verify(puzzleView, times(times)).setSelectedTile(anyInt(), any(AnimationUtils.class));
@@ -109,7 +112,11 @@ public class KeypadTest{
         }
 
         Keypad getKeypad(int[] useds){
-            return new Keypad(context, useds, puzzleView);
+            int mask = 0;
+            for(int i: useds){
+                mask |= CandidateMasks.bit(i);
+            }
+            return new Keypad(context, mask, puzzleView);
         }
 
         @Test
@@ -132,6 +139,31 @@ public class KeypadTest{
             }
         }
 
+        @Test
+        public void isClearAlwaysValid(){
+            useds = new int[]{ 1,2,3,4,5,6,7,8,9 };
+            keypad = getKeypad(useds);
+            Assert.assertTrue(keypad.isValid(0));
+        }
+
+        @Test
+        public void isTileAboveBoardSizeInvalid(){
+            keypad = new Keypad(context, 0, 2, puzzleView);
+            Assert.assertTrue(keypad.isValid(4));
+            Assert.assertFalse(keypad.isValid(5));
+        }
+
+        @Test
+        public void backgroundTapKeepsMarksInPencilMode(){
+            keypad = getKeypad(new int[0]);
+            keypad.setPencilMode(true);
+            keypad.create();
+            keypad.findViewById(R.id.keypad).performClick();
+            verify(puzzleView, never()).setSelectedTile(anyInt(), any(AnimationUtils.class));
+            keypad.findViewById(R.id.keypad_cls).performClick();
+            verify(puzzleView).setSelectedTile(anyInt(), any(AnimationUtils.class));
+        }
+
         @Test
         public void isTilesRangeInvalid(){
             useds = new int[]{ 1,2,3,4,5,6,7,8,9 };
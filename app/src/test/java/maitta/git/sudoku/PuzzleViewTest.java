@@ -23,6 +23,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
@@ -36,6 +37,8 @@ import static maitta.git.sudoku.PuzzleView.SELY;
 import static maitta.git.sudoku.PuzzleView.VIEW_STATE;
 
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
@@ -56,13 +59,16 @@ import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Random;
 
+import maitta.git.sudoku.Models.Metrics;
 import maitta.git.sudoku.ViewModels.GameViewModel;
 import maitta.git.sudoku.ViewModels.PuzzleViewViewModel;
 
@@ -87,6 +93,9 @@ public class PuzzleViewTest {
                 context = ApplicationProvider.getApplicationContext();
                 MockitoAnnotations.initMocks(this);
                 puzzlevmSpy = spy(new PuzzleViewViewModel(context));
+                // 9x9 board
+                when(puzzlevmMock.getBoxSize()).thenReturn(3);
+                when(puzzlevmMock.getSize()).thenReturn(9);
                 puzzle = new PuzzleView(context, game, puzzlevmMock);
                 puzzleSpy = spy(puzzle);
                 rd = new Random();
@@ -98,7 +107,20 @@ public class PuzzleViewTest {
         public void setSelectedTileValid() {
             when(game.getGameVM().setTileIfValid(anyInt(), anyInt(), anyInt())).thenReturn(true);
             puzzleSpy.setSelectedTile(rd.nextInt(), new AnimationUtils());
-            verify(puzzleSpy, times(1)).invalidate();
+            // No hint changed, only the tile itself is repainted
+            verify(puzzleSpy, times(1)).invalidate(any(Rect.class));
+            verify(puzzleSpy, times(0)).invalidate();
+        }
+
+        @Test
+        public void setSelectedTileInvalidatesChangedHints() {
+            GameViewModel gameVM = game.getGameVM();
+            when(gameVM.setTileIfValid(anyInt(), anyInt(), anyInt())).thenReturn(true);
+            // Tile (4,0) in the same row as the selection loses its last candidate
+            when(puzzlevmMock.getHintLevel(gameVM, 4, 0)).thenReturn(1, 0);
+            puzzleSpy.setSelectedTile(rd.nextInt(), new AnimationUtils());
+            verify(puzzlevmMock).setRect(eq(4), eq(0), any(Rect.class));
+            verify(puzzleSpy, times(2)).invalidate(any(Rect.class));
         }
 
         @Test
@@ -143,28 +165,81 @@ public class PuzzleViewTest {
             assertEquals(puzzlevmSpy.getHeight(), height / 9f, 0.1);
         }
 
+        @Test
+        public void onSizeChangedStylesNumbers() {
+            puzzle.onSizeChanged(rd.nextInt(), rd.nextInt(), rd.nextInt(), rd.nextInt());
+            verify(puzzlevmMock).styleNumbers(any(Paint.class));
+        }
+
+        @Test
+        public void onConfigurationChangedReloadsColors() {
+            puzzle.onConfigurationChanged(new Configuration());
+            InOrder orderVerifier = inOrder(puzzlevmMock);
+            orderVerifier.verify(puzzlevmMock).loadColors();
+            orderVerifier.verify(puzzlevmMock).styleNumbers(any(Paint.class));
+        }
+
+        @Test
+        public void onDrawDoesNotStyle() {
+            puzzle.onDraw(mock(Canvas.class));
+            verify(puzzlevmMock, times(0)).styleNumbers(any(Paint.class));
+            verify(puzzlevmMock, times(0)).loadColors();
+        }
+
         @Test
         public void onDrawRightSequence() {
             Canvas canvas = mock(Canvas.class);
             puzzle.onDraw(canvas);
             InOrder orderVerifier = inOrder(puzzlevmMock);
 
+            orderVerifier.verify(puzzlevmMock).clipCells(any(Rect.class));
             orderVerifier.verify(puzzlevmMock).
-                    drawBackground(any(Canvas.class), any(Paint.class), anyInt(), anyInt());
+                    drawBoardLayer(any(Canvas.class), any(Paint.class), anyInt(), anyInt());
             orderVerifier.verify(puzzlevmMock).
-                    drawMinorGridLines(any(Canvas.class), anyInt(), anyInt());
-            orderVerifier.verify(puzzlevmMock).
-                    drawMajorGridLines(any(Canvas.class), anyInt(), anyInt());
-            orderVerifier.verify(puzzlevmMock).styleNumbers(any(Paint.class));
+                    drawHints(any(Canvas.class), any(GameViewModel.class), any(Rect.class), any(Paint.class));
+            orderVerifier.verify(puzzlevmMock).drawSelection(any(Canvas.class), any(Rect.class));
             orderVerifier.verify(puzzlevmMock).
-                    drawNumbers(any(Canvas.class), any(Paint.class), any(GameViewModel.class));
+                    drawConflicts(any(Canvas.class), any(GameViewModel.class), any(Rect.class), any(Paint.class));
             orderVerifier.verify(puzzlevmMock).
-                    drawHints(any(Canvas.class), any(GameViewModel.class), any(Rect.class), any(Paint.class));
-            orderVerifier.verify(puzzlevmMock).drawSelection(any(Canvas.class));
+                    drawMarks(any(Canvas.class), any(Paint.class), any(GameViewModel.class));
             orderVerifier.verify(puzzlevmMock).
                     drawNumbers(any(Canvas.class), any(Paint.class), any(GameViewModel.class));
         }
 
+        @Test
+        public void onDrawRecordsMetricsWhenEnabled() {
+            Metrics metrics = new Metrics();
+            metrics.setEnabled(true);
+            puzzleSpy.setMetrics(metrics);
+            Canvas canvas = mock(Canvas.class);
+            puzzleSpy.onDraw(canvas);
+            assertEquals(1, metrics.getFrameTimes().getCount());
+            verify(puzzleSpy).drawOverlay(canvas);
+        }
+
+        @Test
+        public void onDrawSkipsMetricsWhenDisabled() {
+            Metrics metrics = new Metrics();
+            puzzleSpy.setMetrics(metrics);
+            puzzleSpy.onDraw(mock(Canvas.class));
+            assertEquals(0, metrics.getFrameTimes().getCount());
+            verify(puzzleSpy, times(0)).drawOverlay(any(Canvas.class));
+        }
+
+        @Test
+        public void onDrawDrawsNumbersOnce() {
+            puzzle.onDraw(mock(Canvas.class));
+            verify(puzzlevmMock, times(1)).
+                    drawNumbers(any(Canvas.class), any(Paint.class), any(GameViewModel.class));
+        }
+
+        @Test
+        public void releaseCachesReleasesLayers() {
+            puzzle.releaseCaches();
+            verify(puzzlevmMock).releaseBoardLayer();
+            verify(puzzlevmMock).releaseGlyphs();
+        }
+
         @Test
         public void onTouchEventActionDown() {
             MotionEvent event = mock(MotionEvent.class);
@@ -189,10 +264,11 @@ public class PuzzleViewTest {
             int x = rd.nextInt(),y = rd.nextInt();
             puzzleSpy.select(x, y);
             InOrder orderVerifier = inOrder(puzzleSpy, puzzlevmMock);
-            orderVerifier.verify(puzzleSpy).invalidate();
+            orderVerifier.verify(puzzleSpy).invalidate(any(Rect.class));
             orderVerifier.verify(puzzlevmMock).
                     setRect(anyInt(), anyInt(), any(Rect.class));
-            orderVerifier.verify(puzzleSpy).invalidate();
+            orderVerifier.verify(puzzleSpy).invalidate(any(Rect.class));
+            verify(puzzleSpy, times(0)).invalidate();
         }
 
         @Test
@@ -206,6 +282,94 @@ public class PuzzleViewTest {
             assertEquals(Math.min(Math.max(x, 0), 8), intCaptor1.getValue());
             assertEquals(Math.min(Math.max(y, 0), 8), intCaptor2.getValue());
         }
+
+        @Test
+        public void selectClampsToBoardSize() {
+            when(puzzlevmMock.getSize()).thenReturn(25);
+            puzzleSpy.select(30, 24);
+            assertEquals(24, puzzleSpy.getSelX());
+            assertEquals(24, puzzleSpy.getSelY());
+        }
+
+        @Test
+        public void setSelectedTileWalksPeersOfLargerBoxes() {
+            when(puzzlevmMock.getBoxSize()).thenReturn(5);
+            when(puzzlevmMock.getSize()).thenReturn(25);
+            GameViewModel gameVM = game.getGameVM();
+            when(gameVM.setTileIfValid(anyInt(), anyInt(), anyInt())).thenReturn(true);
+            // (4,4) shares only the box with the selected (0,0)
+            when(puzzlevmMock.getHintLevel(gameVM, 4, 4)).thenReturn(-1, 2);
+            puzzleSpy.setSelectedTile(rd.nextInt(), new AnimationUtils());
+            verify(puzzlevmMock).setRect(eq(4), eq(4), any(Rect.class));
+        }
+
+        @Test
+        public void setSelectedTileRepaintsResolvedConflicts() {
+            GameViewModel gameVM = game.getGameVM();
+            when(gameVM.setTileIfValid(anyInt(), anyInt(), anyInt())).thenReturn(true);
+            // (2,2) clashed with the selected tile until the move
+            when(gameVM.isConflict(2, 2)).thenReturn(true, false);
+            puzzleSpy.setSelectedTile(rd.nextInt(), new AnimationUtils());
+            verify(puzzlevmMock).setRect(eq(2), eq(2), any(Rect.class));
+        }
+
+        @Test
+        public void pencilModeTogglesMarksAndRepaintsPrunedPeers() {
+            GameViewModel gameVM = game.getGameVM();
+            when(gameVM.isPencilMode()).thenReturn(true);
+            when(gameVM.toggleMark(anyInt(), anyInt(), anyInt())).thenReturn(true);
+            // Marks of (0,5) in the same column change with the move
+            when(gameVM.getMarks(0, 5)).thenReturn(3, 1);
+            puzzleSpy.setSelectedTile(2, new AnimationUtils());
+            verify(gameVM).toggleMark(0, 0, 2);
+            verify(gameVM, times(0)).setTileIfValid(anyInt(), anyInt(), anyInt());
+            verify(puzzlevmMock).setRect(eq(0), eq(5), any(Rect.class));
+        }
+    }
+
+    @Config(sdk = 29)
+    @RunWith(RobolectricTestRunner.class)
+    public static class PuzzleViewAllocationTest {
+        private static final int FRAMES = 1000;
+
+        /**
+         * Swallows draw calls so that only the allocations of the view itself are measured.
+         */
+        static class NoOpCanvas extends Canvas {
+            @Override
+            public void drawRect(float left, float top, float right, float bottom, Paint paint) {}
+            @Override
+            public void drawRect(Rect r, Paint paint) {}
+            @Override
+            public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {}
+            @Override
+            public void drawText(String text, float x, float y, Paint paint) {}
+            @Override
+            public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {}
+            @Override
+            public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {}
+        }
+
+        @Test
+        public void onDrawDoesNotAllocate() {
+            Game game = Robolectric.buildActivity(Game.class).create().visible().get();
+            PuzzleView view = game.findViewById(R.id.puzzleId);
+            view.onSizeChanged(900, 900, 0, 0);
+            Canvas canvas = new NoOpCanvas();
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long thread = Thread.currentThread().getId();
+            // Warm up so that class loading and lazy initialization are not counted
+            for (int i = 0; i < FRAMES; i++) {
+                view.onDraw(canvas);
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < FRAMES; i++) {
+                view.onDraw(canvas);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            assertEquals("bytes allocated per frame", 0, allocated / FRAMES);
+        }
     }
 
     @Config(sdk = 29)
@@ -233,6 +397,8 @@ public class PuzzleViewTest {
             if (context == null) {
                 context = ApplicationProvider.getApplicationContext();
                 MockitoAnnotations.initMocks(this);
+                when(puzzleVM.getBoxSize()).thenReturn(3);
+                when(puzzleVM.getSize()).thenReturn(9);
                 puzzle = new PuzzleView(context, game, puzzleVM);
             }
         }
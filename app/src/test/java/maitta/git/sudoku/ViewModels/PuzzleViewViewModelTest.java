@@ -1,20 +1,23 @@
 package maitta.git.sudoku.ViewModels;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyFloat;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static maitta.git.sudoku.ViewModels.PuzzleViewViewModel.numberOfClusters;
-import static maitta.git.sudoku.ViewModels.PuzzleViewViewModel.numberOfTilesInCluster;
+import static maitta.git.sudoku.Models.CandidateMasks.SIZE;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
@@ -81,14 +84,14 @@ public class PuzzleViewViewModelTest {
 
         @Test
         public void drawSelectionRectangle() {
-            puzzleVM.drawSelection(canvas);
+            puzzleVM.drawSelection(canvas, rectangle);
             verify(canvas, times(1)).drawRect(any(Rect.class), any(Paint.class));
         }
 
         @Test(expected = IllegalArgumentException.class)
         public void drawSelectionRectangleNullCanvas() {
             Canvas canvas = null;
-            puzzleVM.drawSelection(canvas);
+            puzzleVM.drawSelection(canvas, rectangle);
         }
 
         @Test
@@ -98,6 +101,18 @@ public class PuzzleViewViewModelTest {
             verify(paint).setColor(color);
         }
 
+        @Test
+        public void drawSelectionReusesPaint() {
+            puzzleVM.drawSelection(canvas, rectangle);
+            puzzleVM.drawSelection(canvas, rectangle);
+            ArgumentCaptor paintCaptor = ArgumentCaptor.forClass(Paint.class);
+            verify(canvas, times(2)).drawRect(any(Rect.class), (Paint) paintCaptor.capture());
+            List<Paint> paints = paintCaptor.getAllValues();
+            assertSame(paints.get(0), paints.get(1));
+            assertEquals(ContextCompat.getColor(context, R.color.puzzle_selected_tile),
+                    paints.get(0).getColor());
+        }
+
         @Test
         public void styleNumbersSetsRightStyle() {
             ArgumentCaptor argCaptor = ArgumentCaptor.forClass(Paint.Style.class);
@@ -134,6 +149,85 @@ public class PuzzleViewViewModelTest {
                     anyFloat(), any(Paint.class));
         }
 
+        @Test
+        public void drawBoardLayerRendersOnce() {
+            PuzzleViewViewModel vmSpy = spy(puzzleVM);
+            vmSpy.setWidth(10);
+            vmSpy.setHeight(10);
+            vmSpy.drawBoardLayer(canvas, paint, 90, 90);
+            vmSpy.drawBoardLayer(canvas, paint, 90, 90);
+            verify(vmSpy, times(1)).drawMinorGridLines(any(Canvas.class), anyInt(), anyInt());
+            verify(vmSpy, times(1)).drawMajorGridLines(any(Canvas.class), anyInt(), anyInt());
+            ArgumentCaptor bitmapCaptor = ArgumentCaptor.forClass(Bitmap.class);
+            verify(canvas, times(2)).drawBitmap((Bitmap) bitmapCaptor.capture(), anyFloat(), anyFloat(),
+                    any(Paint.class));
+            List<Bitmap> bitmaps = bitmapCaptor.getAllValues();
+            assertSame(bitmaps.get(0), bitmaps.get(1));
+            assertEquals(90, bitmaps.get(0).getWidth());
+        }
+
+        @Test
+        public void drawBoardLayerRendersAgainOnChange() {
+            PuzzleViewViewModel vmSpy = spy(puzzleVM);
+            vmSpy.setWidth(10);
+            vmSpy.setHeight(10);
+            vmSpy.drawBoardLayer(canvas, paint, 90, 90);
+            // New size
+            vmSpy.drawBoardLayer(canvas, paint, 90, 180);
+            // New colors
+            vmSpy.loadColors();
+            vmSpy.drawBoardLayer(canvas, paint, 90, 180);
+            // Memory pressure
+            vmSpy.releaseBoardLayer();
+            vmSpy.drawBoardLayer(canvas, paint, 90, 180);
+            verify(vmSpy, times(4)).drawMinorGridLines(any(Canvas.class), anyInt(), anyInt());
+        }
+
+        @Test
+        public void drawBoardLayerNoSize() {
+            puzzleVM.drawBoardLayer(canvas, paint, 0, 0);
+            verify(canvas, times(0)).drawBitmap(any(Bitmap.class), anyFloat(), anyFloat(),
+                    any(Paint.class));
+        }
+
+        @Test
+        public void clipCellsLimitsNumbers() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            when(gameVM.getTile(anyInt(), anyInt())).thenReturn(5);
+            puzzleVM.setWidth(10);
+            puzzleVM.setHeight(10);
+            // Selection moving from (2,4) to (3,4)
+            puzzleVM.clipCells(new Rect(20, 40, 40, 50));
+            puzzleVM.drawNumbers(canvas, new Paint(), gameVM);
+            verify(gameVM).getTile(2, 4);
+            verify(gameVM).getTile(3, 4);
+            verify(canvas, times(2)).drawBitmap(any(Bitmap.class), any(Rect.class), any(Rect.class),
+                    any(Paint.class));
+        }
+
+        @Test
+        public void clipCellsWholeView() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            puzzleVM.setWidth(10);
+            puzzleVM.setHeight(10);
+            puzzleVM.clipCells(new Rect(-5, -5, 200, 200));
+            puzzleVM.drawHints(canvas, gameVM, rectangle, paint);
+            verify(gameVM, times(SIZE * SIZE)).getUsedMask(anyInt(), anyInt());
+        }
+
+        @Test
+        public void getHintLevel() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            when(gameVM.getUsedMask(0, 0)).thenReturn(0x1FF);
+            when(gameVM.getUsedMask(1, 0)).thenReturn(0x0FF);
+            when(gameVM.getUsedMask(2, 0)).thenReturn(0x07F);
+            when(gameVM.getUsedMask(3, 0)).thenReturn(0x03F);
+            assertEquals(0, puzzleVM.getHintLevel(gameVM, 0, 0));
+            assertEquals(1, puzzleVM.getHintLevel(gameVM, 1, 0));
+            assertEquals(2, puzzleVM.getHintLevel(gameVM, 2, 0));
+            assertEquals(-1, puzzleVM.getHintLevel(gameVM, 3, 0));
+        }
+
         @Test
         public void drawBackground() {
             Paint background = mock(Paint.class);
@@ -152,8 +246,8 @@ public class PuzzleViewViewModelTest {
             Paint paint = mock(Paint.class);
             int maximumSudokuMoves = 9;
             when(game.getGameVM()).thenReturn(mock(GameViewModel.class));
-            when(game.getGameVM().getUsedTiles(anyInt(), anyInt())).
-                    thenReturn(new int[maximumSudokuMoves + 1]);
+            when(game.getGameVM().getUsedMask(anyInt(), anyInt())).
+                    thenReturn((1 << (maximumSudokuMoves + 1)) - 1);
             Exception exception = assertThrows(IndexOutOfBoundsException.class, () -> {
                 puzzleVM.drawHints(canvas, game.getGameVM() , rect, paint);
             });
@@ -165,42 +259,122 @@ public class PuzzleViewViewModelTest {
 
         @Test
         public void drawNumbersRightParametersAndInvocations() {
-            Game game = mock(Game.class);
-            Paint.FontMetrics fm = mock(Paint.FontMetrics.class);
-            fm.ascent = rd.nextFloat();
-            fm.descent = rd.nextFloat();
-            when(paint.getFontMetrics()).thenReturn(fm);
-            String dummy = "some mocked value";
-            when(game.getGameVM()).thenReturn(mock(GameViewModel.class));
-            when(game.getGameVM().getTileString(anyInt(), anyInt())).thenReturn(dummy);
-            puzzleVM.drawNumbers(canvas, paint, game.getGameVM());
-
-            ArgumentCaptor argCaptor1 = ArgumentCaptor.forClass(String.class);
-            ArgumentCaptor argCaptor2 = ArgumentCaptor.forClass(Float.class);
-            ArgumentCaptor argCaptor3 = ArgumentCaptor.forClass(Float.class);
-            ArgumentCaptor argCaptor4 = ArgumentCaptor.forClass(Paint.class);
-            int times = numberOfClusters * numberOfTilesInCluster;
-            verify(canvas, times(times)).drawText((String) argCaptor1.capture(), (Float) argCaptor2.capture(),
-                    (Float) argCaptor3.capture(), (Paint) argCaptor4.capture());
-
-            List<String> arg1List = argCaptor1.getAllValues();
-            List<Float> arg2List = argCaptor2.getAllValues();
-            List<Float> arg3List = argCaptor3.getAllValues();
-            List<Paint> arg4List = argCaptor4.getAllValues();
-            final float x = puzzleVM.getWidth() / 2;
-            final float y = puzzleVM.getHeight() / 2 - (fm.ascent + fm.descent) / 2;
-            int index = 0;
-            for (int i = 0; i < numberOfClusters; i++) {
-                for (int j = 0; j < numberOfTilesInCluster; j++) {
-                    assertEquals(dummy, arg1List.get(index));
-                    assertEquals(i * puzzleVM.getWidth() + x, arg2List.get(index), 0.1);
-                    assertEquals(j * puzzleVM.getHeight() + y, arg3List.get(index), 0.1);
-                    assertEquals(paint, arg4List.get(index));
-                    index++;
-                }
-            }
+            GameViewModel gameVM = mock(GameViewModel.class);
+            when(gameVM.getTile(3, 5)).thenReturn(7);
+            puzzleVM.setWidth(10);
+            puzzleVM.setHeight(10);
+            puzzleVM.styleNumbers(new Paint());
+            puzzleVM.drawNumbers(canvas, new Paint(), gameVM);
+            // Empty tiles are skipped, the digit is blitted from its slot in the atlas
+            verify(canvas, times(1)).drawBitmap(any(Bitmap.class), eq(new Rect(60, 0, 70, 10)),
+                    eq(new Rect(30, 50, 40, 60)), any(Paint.class));
+            verify(canvas, times(0)).drawText(any(String.class), anyFloat(), anyFloat(), any(Paint.class));
         }
 
+        @Test
+        public void drawNumbersRasterizesGlyphsOnce() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            when(gameVM.getTile(anyInt(), anyInt())).thenReturn(1);
+            Paint foreground = new Paint();
+            puzzleVM.setWidth(10);
+            puzzleVM.setHeight(10);
+            puzzleVM.styleNumbers(foreground);
+            puzzleVM.drawNumbers(canvas, foreground, gameVM);
+            puzzleVM.drawNumbers(canvas, foreground, gameVM);
+            // A new tile size rasterizes the digits again
+            puzzleVM.setWidth(20);
+            puzzleVM.setHeight(20);
+            puzzleVM.styleNumbers(foreground);
+            puzzleVM.drawNumbers(canvas, foreground, gameVM);
+            ArgumentCaptor bitmapCaptor = ArgumentCaptor.forClass(Bitmap.class);
+            verify(canvas, times(3 * SIZE * SIZE)).drawBitmap(
+                    (Bitmap) bitmapCaptor.capture(), any(Rect.class), any(Rect.class), any(Paint.class));
+            List<Bitmap> bitmaps = bitmapCaptor.getAllValues();
+            int frame = SIZE * SIZE;
+            assertSame(bitmaps.get(0), bitmaps.get(frame));
+            assertNotSame(bitmaps.get(0), bitmaps.get(2 * frame));
+            assertEquals(9 * 20, bitmaps.get(2 * frame).getWidth());
+        }
+
+        @Test
+        public void drawNumbersOnTwentyFiveByTwentyFive() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            when(gameVM.getTile(anyInt(), anyInt())).thenReturn(25);
+            Paint foreground = new Paint();
+            puzzleVM.setBoxSize(5);
+            puzzleVM.setWidth(10);
+            puzzleVM.setHeight(10);
+            puzzleVM.styleNumbers(foreground);
+            puzzleVM.drawNumbers(canvas, foreground, gameVM);
+            ArgumentCaptor bitmapCaptor = ArgumentCaptor.forClass(Bitmap.class);
+            verify(canvas, times(25 * 25)).drawBitmap((Bitmap) bitmapCaptor.capture(),
+                    eq(new Rect(240, 0, 250, 10)), any(Rect.class), any(Paint.class));
+            // One glyph per value
+            assertEquals(25 * 10, ((Bitmap) bitmapCaptor.getValue()).getWidth());
+        }
+
+        @Test
+        public void drawConflictsOnlyVisitsConflictSet() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            when(gameVM.nextConflict(0)).thenReturn(10);
+            when(gameVM.nextConflict(11)).thenReturn(40);
+            when(gameVM.nextConflict(41)).thenReturn(-1);
+            puzzleVM.setWidth(10);
+            puzzleVM.setHeight(10);
+            puzzleVM.drawConflicts(canvas, gameVM, new Rect(), new Paint());
+            verify(canvas).drawRect(eq(new Rect(10, 10, 20, 20)), any(Paint.class));
+            verify(canvas).drawRect(eq(new Rect(40, 40, 50, 50)), any(Paint.class));
+            verify(canvas, times(2)).drawRect(any(Rect.class), any(Paint.class));
+        }
+
+        @Test
+        public void drawMarksBlitsSetValuesOfEmptyTiles() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            when(gameVM.getMarks(4, 2)).thenReturn(1 | 1 << 8);
+            when(gameVM.getMarks(5, 2)).thenReturn(1);
+            when(gameVM.getTile(5, 2)).thenReturn(3);
+            puzzleVM.setWidth(30);
+            puzzleVM.setHeight(30);
+            puzzleVM.styleNumbers(new Paint());
+            puzzleVM.drawMarks(canvas, new Paint(), gameVM);
+            // 1 goes to the top left third of the tile and 9 to the bottom right one
+            verify(canvas).drawBitmap(any(Bitmap.class), eq(new Rect(0, 0, 10, 10)),
+                    eq(new Rect(120, 60, 130, 70)), any(Paint.class));
+            verify(canvas).drawBitmap(any(Bitmap.class), eq(new Rect(80, 0, 90, 10)),
+                    eq(new Rect(140, 80, 150, 90)), any(Paint.class));
+            // Filled tiles hide their marks
+            verify(canvas, times(2)).drawBitmap(any(Bitmap.class), any(Rect.class), any(Rect.class),
+                    any(Paint.class));
+        }
+
+        @Test
+        public void gridLinesFollowBoxSize() {
+            puzzleVM.setBoxSize(4);
+            puzzleVM.drawMajorGridLines(canvas, rd.nextInt(), rd.nextInt());
+            verify(canvas, times(4 * 4)).drawLine(anyInt(), anyFloat(), anyInt(),
+                    anyFloat(), any(Paint.class));
+            puzzleVM.drawMinorGridLines(canvas, rd.nextInt(), rd.nextInt());
+            verify(canvas, times(4 * 4 + 16 * 4)).drawLine(anyInt(), anyFloat(), anyInt(),
+                    anyFloat(), any(Paint.class));
+        }
+
+        @Test
+        public void hintLevelFollowsBoxSize() {
+            GameViewModel gameVM = mock(GameViewModel.class);
+            // 15 of 16 values used leaves one move
+            when(gameVM.getUsedMask(anyInt(), anyInt())).thenReturn(0x7FFF);
+            puzzleVM.setBoxSize(4);
+            assertEquals(1, puzzleVM.getHintLevel(gameVM, 0, 0));
+        }
+
+        @Test
+        public void drawNumbersNoSize() {
+            puzzleVM.setWidth(0);
+            puzzleVM.setHeight(0);
+            puzzleVM.drawNumbers(canvas, paint, mock(GameViewModel.class));
+            verify(canvas, times(0)).drawBitmap(any(Bitmap.class), any(Rect.class), any(Rect.class),
+                    any(Paint.class));
+        }
 
         @Test
         public void getRect() {
@@ -227,7 +401,7 @@ public class PuzzleViewViewModelTest {
                 getApplicationContext());
         @Mock
         private Canvas canvas;
-        private int[] usedTilesInput;
+        private int usedTilesInput;
         private int times;
 
         @Before
@@ -235,7 +409,7 @@ public class PuzzleViewViewModelTest {
             MockitoAnnotations.initMocks(this);
         }
 
-        public DrawHintsAndNumbersTest(int[] input, int times) {
+        public DrawHintsAndNumbersTest(int input, int times) {
             this.usedTilesInput = input;
             this.times = times;
         }
@@ -243,16 +417,16 @@ public class PuzzleViewViewModelTest {
         @ParameterizedRobolectricTestRunner.Parameters(name = "usedTilesInput = {0}")
         public static Collection params(){
             return Arrays.asList(new Object[][] {
-                    { new int[0], 0 },
-                    { new int[1], 0 },
-                    { new int[2], 0 },
-                    { new int[3], 0 },
-                    { new int[4], 0 },
-                    { new int[5], 0 },
-                    { new int[6], 0 },
-                    { new int[7], numberOfClusters * numberOfTilesInCluster },
-                    { new int[8], numberOfClusters * numberOfTilesInCluster },
-                    { new int[9], numberOfClusters * numberOfTilesInCluster }
+                    { 0, 0 },
+                    { 1, 0 },
+                    { 2, 0 },
+                    { 3, 0 },
+                    { 4, 0 },
+                    { 5, 0 },
+                    { 6, 0 },
+                    { 7, SIZE * SIZE },
+                    { 8, SIZE * SIZE },
+                    { 9, SIZE * SIZE }
             });
         }
 
@@ -262,7 +436,7 @@ public class PuzzleViewViewModelTest {
             Rect rect = mock(Rect.class);
             Paint paint = mock(Paint.class);
             when(game.getGameVM()).thenReturn(mock(GameViewModel.class));
-            when(game.getGameVM().getUsedTiles(anyInt(), anyInt())).thenReturn((usedTilesInput));
+            when(game.getGameVM().getUsedMask(anyInt(), anyInt())).thenReturn((1 << usedTilesInput) - 1);
             puzzleVM.drawHints(canvas, game.getGameVM(), rect, paint);
             verify(puzzleVM, times(times)).setRect(anyInt(), anyInt(), any(Rect.class));
             verify(paint, times(times)).setColor(anyInt());
@@ -0,0 +1,45 @@
+package maitta.git.sudoku.Models;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Puzzle generation per difficulty, grading of generated puzzles and hints on them
+ */
+@State(Scope.Thread)
+public class GeneratorBenchmark {
+    @Param({ "0", "1", "2" })
+    public int difficulty;
+
+    private Generator generator;
+    private Grader grader;
+    private int[] puzzle;
+    private CandidateMasks used;
+
+    @Setup
+    public void setup() {
+        generator = new Generator(42);
+        grader = new Grader();
+        puzzle = new Generator(7).generate(Difficulty.HARD);
+        used = new CandidateMasks();
+        used.rebuild(puzzle);
+    }
+
+    @Benchmark
+    public int[] generate() {
+        return generator.generate(difficulty);
+    }
+
+    @Benchmark
+    public Grader.Grade grade() {
+        return grader.grade(puzzle);
+    }
+
+    @Benchmark
+    public Grader.Hint hint() {
+        return grader.hint(puzzle, used);
+    }
+}
@@ -0,0 +1,49 @@
+package maitta.git.sudoku.Models;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Both solver engines on the same puzzles, from a generated one to inputs built against brute
+ * force search.
+ */
+@State(Scope.Thread)
+public class SolverBenchmark {
+    @Param({ "backtracking", "dancingLinks" })
+    public String engine;
+
+    @Param({
+            // Shipped hard puzzle
+            "000600400700003600000091080000000000050180003000306045040200060903000000020000100",
+            // Published as one of the hardest puzzles for human solvers
+            "800000000003600000070090200050007000000045700000100030001000068008500010090000400",
+            // Built against brute force
+            "000000000000003085001020000000507000004000100090000000500000073002010000000040009" })
+    public String puzzle;
+
+    private Solver solver;
+    private int[] grid;
+    private final int[] solution = new int[81];
+
+    @Setup
+    public void setup() {
+        solver = engine.equals("backtracking") ? new BacktrackingSolver() : new DancingLinksSolver();
+        grid = new int[puzzle.length()];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = puzzle.charAt(i) - '0';
+        }
+    }
+
+    @Benchmark
+    public boolean solve() {
+        return solver.solve(grid, solution);
+    }
+
+    @Benchmark
+    public int countSolutions() {
+        return solver.countSolutions(grid, 2);
+    }
+}
@@ -0,0 +1,64 @@
+package maitta.git.sudoku.ViewModels;
+
+import static maitta.git.sudoku.ViewModels.GameViewModel.DIFFICULTY_CONTINUE;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per move and per save costs of the board model. Lives in the GameViewModel package to reach
+ * fromPuzzleString.
+ */
+@State(Scope.Thread)
+public class GameViewModelBenchmark {
+    static final String easyPuzzle = "000260701680070090190004500"
+            + "820100040004602900050003028" + "009300074040050036703018000";
+
+    private GameViewModel gameVM;
+    private int[] puzzle;
+    private int move;
+
+    /**
+     * A fresh board every iteration, setTileIfValid adds to the undo history on every call
+     * */
+    @Setup(Level.Iteration)
+    public void setup() {
+        gameVM = new GameViewModel();
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        puzzle = gameVM.getPuzzle();
+    }
+
+    @Benchmark
+    public GameViewModel calculateUsedTiles() {
+        gameVM.calculateUsedTiles();
+        return gameVM;
+    }
+
+    /**
+     * Alternately sets and clears the empty top left tile, the typical tap
+     * */
+    @Benchmark
+    public boolean setTileIfValid() {
+        move ^= 4;
+        return gameVM.setTileIfValid(0, 0, move);
+    }
+
+    @Benchmark
+    public int getUsedMask() {
+        return gameVM.getUsedMask(4, 4);
+    }
+
+    @Benchmark
+    public int[] fromPuzzleString() {
+        return gameVM.fromPuzzleString(easyPuzzle);
+    }
+
+    @Benchmark
+    public String toPuzzleString() {
+        return gameVM.toPuzzleString(puzzle);
+    }
+}
@@ -0,0 +1,115 @@
+package maitta.git.sudoku.Models;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Write-behind saves. Callers hand over a snapshot after every move and return immediately, a
+ * single background thread writes the latest one DELAY_MS later, so a burst of moves costs one
+ * write and at most DELAY_MS of progress is ever at risk. Writes replace the file atomically.
+ */
+public class AutoSaver {
+    public static final long DELAY_MS = 300;
+
+    private final File file;
+    private final ScheduledExecutorService executor;
+    private final long delayMs;
+    /**
+     * Newest snapshot not written yet, older ones are simply replaced
+     * */
+    private final AtomicReference<SaveFormat.Snapshot> pending = new AtomicReference<>();
+    private volatile SaveFormat.Snapshot latest;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile ScheduledFuture<?> delayed;
+    private volatile IOException lastError;
+
+    private final Runnable writePending = new Runnable() {
+        @Override
+        public void run() {
+            scheduled.set(false);
+            SaveFormat.Snapshot snapshot = pending.getAndSet(null);
+            if (snapshot == null)
+                return;
+            try {
+                write(snapshot);
+                lastError = null;
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+    };
+
+    public AutoSaver(File file) {
+        this(file, new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "AutoSaver");
+            }
+        }), DELAY_MS);
+    }
+
+    public AutoSaver(File file, ScheduledExecutorService executor, long delayMs) {
+        this.file = file;
+        this.executor = executor;
+        this.delayMs = delayMs;
+    }
+
+    /**
+     * Queue a snapshot, it is written together with any that follow within the delay
+     * @param snapshot must not be modified afterwards, see GameViewModel.toSnapshot
+     */
+    public void save(SaveFormat.Snapshot snapshot) {
+        latest = snapshot;
+        pending.set(snapshot);
+        if (scheduled.compareAndSet(false, true))
+            delayed = executor.schedule(writePending, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write the queued snapshot now, still off the calling thread
+     * @return completes once everything saved before this call is on disk
+     */
+    public Future<?> flush() {
+        return executor.submit(writePending);
+    }
+
+    /**
+     * Flush and stop the background thread once the write is done
+     */
+    public void shutdown() {
+        flush();
+        // The flush covers the delayed write, do not keep the thread alive for it
+        ScheduledFuture<?> write = delayed;
+        if (write != null)
+            write.cancel(false);
+        executor.shutdown();
+    }
+
+    /**
+     * Newest snapshot handed to save, it may not be on disk yet. Newer than the file whenever a
+     * write is still queued, so read this before the file when continuing a game.
+     * @return null if nothing was saved since this saver was created
+     */
+    public SaveFormat.Snapshot getLatest() {
+        return latest;
+    }
+
+    /**
+     * @return why the last write failed, null when it succeeded
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    protected void write(SaveFormat.Snapshot snapshot) throws IOException {
+        SaveFormat.writeAtomically(file, snapshot);
+    }
+}
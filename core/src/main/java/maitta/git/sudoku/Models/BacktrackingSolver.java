@@ -0,0 +1,171 @@
+package maitta.git.sudoku.Models;
+
+/**
+ * Depth first search over bitmask candidates that always branches on the empty tile with the
+ * fewest candidates left (minimum remaining values). All buffers are allocated once, the search
+ * itself does not allocate. Solves boards of one box size, 9x9 by default.
+ */
+public class BacktrackingSolver implements Solver {
+    private final int size;
+    private final int cells;
+    private final int all;
+    private final int row[];
+    private final int col[];
+    private final int box[];
+
+    private final int grid[];
+    private final int rows[];
+    private final int cols[];
+    private final int boxes[];
+    /**
+     * Indexes of the empty tiles, the ones before the current depth are already filled
+     * */
+    private final int empties[];
+    private int emptyCount;
+    private int limit;
+    private int solutions;
+    private long steps;
+
+    public BacktrackingSolver() {
+        this(CandidateMasks.BOX_SIZE);
+    }
+
+    /**
+     * @param boxSize box size of the puzzles to solve, see CandidateMasks
+     */
+    public BacktrackingSolver(int boxSize) {
+        size = CandidateMasks.sizeOf(boxSize);
+        cells = size * size;
+        all = CandidateMasks.all(size);
+        row = new int[cells];
+        col = new int[cells];
+        box = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            row[i] = i / size;
+            col[i] = i % size;
+            box[i] = CandidateMasks.box(col[i], row[i], boxSize);
+        }
+        grid = new int[cells];
+        rows = new int[size];
+        cols = new int[size];
+        boxes = new int[size];
+        empties = new int[cells];
+    }
+
+    @Override
+    public int[] solve(int[] puzzle) {
+        int solution[] = new int[cells];
+        return solve(puzzle, solution) ? solution : null;
+    }
+
+    @Override
+    public boolean solve(int[] puzzle, int[] solution) {
+        if (countSolutions(puzzle, 1) == 0)
+            return false;
+        // The search stops right at the first solution, leaving it in the grid
+        System.arraycopy(grid, 0, solution, 0, cells);
+        return true;
+    }
+
+    @Override
+    public int countSolutions(int[] puzzle, int limit) {
+        return countSolutions(puzzle, limit, Long.MAX_VALUE);
+    }
+
+    @Override
+    public int countSolutions(int[] puzzle, int limit, long maxSteps) {
+        this.limit = limit;
+        solutions = 0;
+        steps = maxSteps;
+        if (load(puzzle) && limit > 0 && search(0) && solutions < limit)
+            return -1;
+        return solutions;
+    }
+
+    /**
+     * Copy the puzzle into the search buffers
+     * @return false if two givens already clash
+     */
+    private boolean load(int[] puzzle) {
+        if (puzzle.length != cells)
+            throw new IllegalArgumentException("Puzzle must have " + cells + " tiles");
+        for (int i = 0; i < size; i++) {
+            rows[i] = 0;
+            cols[i] = 0;
+            boxes[i] = 0;
+        }
+        emptyCount = 0;
+        for (int i = 0; i < cells; i++) {
+            int value = puzzle[i];
+            grid[i] = value;
+            if (value == 0) {
+                empties[emptyCount++] = i;
+                continue;
+            }
+            int b = CandidateMasks.bit(value);
+            if (((rows[row[i]] | cols[col[i]] | boxes[box[i]]) & b) != 0)
+                return false;
+            place(i, b);
+        }
+        return true;
+    }
+
+    /**
+     * @return true once the solution limit is reached or the steps ran out
+     */
+    private boolean search(int depth) {
+        if (depth == emptyCount)
+            return ++solutions >= limit;
+        if (--steps < 0)
+            return true;
+        // Minimum remaining values: pick the most constrained empty tile
+        int best = depth;
+        int bestFree = 0;
+        int bestCount = size + 1;
+        for (int i = depth; i < emptyCount; i++) {
+            int free = candidates(empties[i]);
+            int count = Integer.bitCount(free);
+            if (count < bestCount) {
+                best = i;
+                bestFree = free;
+                bestCount = count;
+                if (count <= 1)
+                    break;
+            }
+        }
+        if (bestCount == 0)
+            return false;
+        int cell = empties[best];
+        empties[best] = empties[depth];
+        empties[depth] = cell;
+
+        for (int free = bestFree; free != 0; free &= free - 1) {
+            int b = free & -free;
+            place(cell, b);
+            grid[cell] = Integer.numberOfTrailingZeros(b) + 1;
+            if (search(depth + 1))
+                return true;
+            remove(cell, b);
+        }
+        grid[cell] = 0;
+        empties[depth] = empties[best];
+        empties[best] = cell;
+        return false;
+    }
+
+    private int candidates(int cell) {
+        return ~(rows[row[cell]] | cols[col[cell]] | boxes[box[cell]]) & all;
+    }
+
+    private void place(int cell, int b) {
+        rows[row[cell]] |= b;
+        cols[col[cell]] |= b;
+        boxes[box[cell]] |= b;
+    }
+
+    private void remove(int cell, int b) {
+        rows[row[cell]] &= ~b;
+        cols[col[cell]] &= ~b;
+        boxes[box[cell]] &= ~b;
+    }
+}
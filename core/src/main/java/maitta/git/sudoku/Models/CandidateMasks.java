@@ -0,0 +1,231 @@
+package maitta.git.sudoku.Models;
+
+import java.util.Arrays;
+
+/**
+ * Constraint tracking for a board of boxSize x boxSize boxes, 9x9 by default. Every row, column
+ * and box keeps a mask where bit (value - 1) is set when that value is already placed in the
+ * unit, so the used values seen from a cell are just the OR of its three masks. A 25x25 board
+ * still fits its masks in an int. Each unit also counts its tiles per value, which keeps the
+ * masks right when a value is placed twice and tells which tiles clash.
+ */
+public class CandidateMasks {
+    public static final int SIZE = 9;
+    public static final int BOX_SIZE = 3;
+    /**
+     * Largest box size whose masks fit in an int, i.e. 25x25 boards
+     * */
+    public static final int MAX_BOX_SIZE = 5;
+    /**
+     * Mask with every value from 1 to 9 set
+     * */
+    public static final int ALL = (1 << SIZE) - 1;
+
+    private final int boxSize;
+    private final int size;
+    private final int all;
+    private final int rows[];
+    private final int cols[];
+    private final int boxes[];
+    /**
+     * Tiles holding each value per unit, at unit * size + value - 1
+     * */
+    private final int rowCounts[];
+    private final int colCounts[];
+    private final int boxCounts[];
+
+    public CandidateMasks() {
+        this(BOX_SIZE);
+    }
+
+    /**
+     * @param boxSize 2 for 4x4, 3 for 9x9, 4 for 16x16 and 5 for 25x25 boards
+     */
+    public CandidateMasks(int boxSize) {
+        this.boxSize = boxSize;
+        size = sizeOf(boxSize);
+        all = all(size);
+        rows = new int[size];
+        cols = new int[size];
+        boxes = new int[size];
+        rowCounts = new int[size * size];
+        colCounts = new int[size * size];
+        boxCounts = new int[size * size];
+    }
+
+    public int getBoxSize() {
+        return boxSize;
+    }
+
+    /**
+     * Tiles per row, column and box
+     * */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Mask with every value of this board set
+     * */
+    public int getAll() {
+        return all;
+    }
+
+    /**
+     * Mask with every value from 1 to size set
+     * */
+    public static int all(int size) {
+        return (1 << size) - 1;
+    }
+
+    /**
+     * Tiles per row of a board with the given box size
+     * @throws IllegalArgumentException when the box size is not supported
+     */
+    public static int sizeOf(int boxSize) {
+        if (boxSize < 1 || boxSize > MAX_BOX_SIZE)
+            throw new IllegalArgumentException("Unsupported box size " + boxSize);
+        return boxSize * boxSize;
+    }
+
+    /**
+     * Box size of a board with the given number of tiles, e.g. 3 for 81
+     * */
+    public static int boxSizeOf(int cells) {
+        int box = (int) Math.round(Math.sqrt(Math.sqrt(cells)));
+        if (box < 1 || box > MAX_BOX_SIZE || box * box * box * box != cells)
+            throw new IllegalArgumentException("Not a square board of square boxes: " + cells
+                    + " cells");
+        return box;
+    }
+
+    /**
+     * Return the mask bit of a tile value, 0 for an empty tile
+     * */
+    public static int bit(int value) {
+        return value == 0 ? 0 : 1 << (value - 1);
+    }
+
+    /**
+     * Return the index of the box containing the given coordinates on a 9x9 board
+     * */
+    public static int box(int x, int y) {
+        return box(x, y, BOX_SIZE);
+    }
+
+    /**
+     * Return the index of the box containing the given coordinates
+     * */
+    public static int box(int x, int y, int boxSize) {
+        return (y / boxSize) * boxSize + x / boxSize;
+    }
+
+    /**
+     * Recompute every unit mask from the given puzzle
+     * */
+    public void rebuild(int[] puzzle) {
+        if (puzzle.length != size * size)
+            throw new IllegalArgumentException("Puzzle must have " + size * size + " tiles");
+        for (int i = 0; i < size; i++) {
+            rows[i] = 0;
+            cols[i] = 0;
+            boxes[i] = 0;
+        }
+        Arrays.fill(rowCounts, 0);
+        Arrays.fill(colCounts, 0);
+        Arrays.fill(boxCounts, 0);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int value = puzzle[y * size + x];
+                if (value != 0)
+                    add(x, y, box(x, y, boxSize), value);
+            }
+        }
+    }
+
+    /**
+     * Apply a single tile change to the counts and masks of its row, column and box. A value only
+     * leaves a mask once its count drops to 0, so units holding it twice need no rescan.
+     * @param previous value the tile had before the change, 0 if it was empty
+     * @param value new value of the tile, 0 to clear it
+     */
+    public void update(int x, int y, int previous, int value) {
+        int b = box(x, y, boxSize);
+        if (previous != 0)
+            remove(x, y, b, previous);
+        if (value != 0)
+            add(x, y, b, value);
+    }
+
+    private void add(int x, int y, int b, int value) {
+        final int v = value - 1;
+        final int set = bit(value);
+        if (rowCounts[y * size + v]++ == 0)
+            rows[y] |= set;
+        if (colCounts[x * size + v]++ == 0)
+            cols[x] |= set;
+        if (boxCounts[b * size + v]++ == 0)
+            boxes[b] |= set;
+    }
+
+    private void remove(int x, int y, int b, int value) {
+        final int v = value - 1;
+        final int clear = ~bit(value);
+        if (--rowCounts[y * size + v] == 0)
+            rows[y] &= clear;
+        if (--colCounts[x * size + v] == 0)
+            cols[x] &= clear;
+        if (--boxCounts[b * size + v] == 0)
+            boxes[b] &= clear;
+    }
+
+    /**
+     * True if another tile of the row, column or box holds the same value
+     * @param value current value of the tile, 0 never clashes
+     */
+    public boolean isConflict(int x, int y, int value) {
+        if (value == 0)
+            return false;
+        final int v = value - 1;
+        return rowCounts[y * size + v] > 1 || colCounts[x * size + v] > 1
+                || boxCounts[box(x, y, boxSize) * size + v] > 1;
+    }
+
+    /**
+     * Compare the masks against a full recompute of the given puzzle. Meant for tests and debug
+     * checks only, it allocates a fresh set of masks.
+     */
+    public boolean isConsistent(int[] puzzle) {
+        CandidateMasks expected = new CandidateMasks(boxSize);
+        expected.rebuild(puzzle);
+        for (int i = 0; i < size; i++) {
+            if (rows[i] != expected.rows[i] || cols[i] != expected.cols[i]
+                    || boxes[i] != expected.boxes[i])
+                return false;
+        }
+        return Arrays.equals(rowCounts, expected.rowCounts)
+                && Arrays.equals(colCounts, expected.colCounts)
+                && Arrays.equals(boxCounts, expected.boxCounts);
+    }
+
+    /**
+     * Return the values used by the peers of the given coordinates. The value of the tile itself
+     * is left out so that it can be overwritten.
+     * @param value current value of the tile
+     */
+    public int getUsed(int x, int y, int value) {
+        return (rows[y] | cols[x] | boxes[box(x, y, boxSize)]) & ~bit(value);
+    }
+
+    /**
+     * Convert a mask into the sorted array of values it contains
+     * */
+    public static int[] toValues(int mask) {
+        int values[] = new int[Integer.bitCount(mask)];
+        int n = 0;
+        for (int m = mask; m != 0; m &= m - 1) {
+            values[n++] = Integer.numberOfTrailingZeros(m) + 1;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,242 @@
+package maitta.git.sudoku.Models;
+
+/**
+ * Knuth's Algorithm X over dancing links. Sudoku is mapped to an exact cover problem with 324
+ * constraint columns (tile filled, value in row, value in column, value in box) and 729 candidate
+ * rows of 4 nodes each. The node matrix is built once in the constructor; givens are covered at
+ * the start of every solve and uncovered again at the end, so the matrix is left intact for the
+ * next puzzle. Always branching on the column with the fewest rows keeps the worst case flat on
+ * inputs that make plain backtracking blow up. Other box sizes map the same way, a 25x25 board
+ * has 2500 columns and 15625 rows.
+ */
+public class DancingLinksSolver implements Solver {
+    private static final int ROOT = 0;
+    private final int tiles; // tiles per row
+    private final int cells;
+    private final int columns;
+
+    // Node links, the root and column headers come first
+    private final int left[];
+    private final int right[];
+    private final int up[];
+    private final int down[];
+    private final int column[];
+    /**
+     * Candidate of each node as tile * tiles + value - 1
+     * */
+    private final int candidate[];
+    /**
+     * Number of nodes left in each column, indexed by header node
+     * */
+    private final int size[];
+    /**
+     * First node of each candidate row
+     * */
+    private final int rowStart[];
+    /**
+     * Rows picked so far, givens first
+     * */
+    private final int picked[];
+    private int limit;
+    private int solutions;
+    private long steps;
+
+    public DancingLinksSolver() {
+        this(CandidateMasks.BOX_SIZE);
+    }
+
+    /**
+     * @param boxSize box size of the puzzles to solve, see CandidateMasks
+     */
+    public DancingLinksSolver(int boxSize) {
+        tiles = CandidateMasks.sizeOf(boxSize);
+        cells = tiles * tiles;
+        columns = 4 * cells;
+        final int candidates = cells * tiles;
+        final int nodes = 1 + columns + 4 * candidates;
+        left = new int[nodes];
+        right = new int[nodes];
+        up = new int[nodes];
+        down = new int[nodes];
+        column = new int[nodes];
+        candidate = new int[nodes];
+        size = new int[1 + columns];
+        rowStart = new int[candidates];
+        picked = new int[cells];
+        for (int c = 0; c <= columns; c++) {
+            left[c] = c == 0 ? columns : c - 1;
+            right[c] = c == columns ? 0 : c + 1;
+            up[c] = c;
+            down[c] = c;
+            column[c] = c;
+        }
+        int node = 1 + columns;
+        for (int cell = 0; cell < cells; cell++) {
+            int y = cell / tiles;
+            int x = cell % tiles;
+            int box = CandidateMasks.box(x, y, boxSize);
+            for (int v = 0; v < tiles; v++) {
+                int cand = cell * tiles + v;
+                rowStart[cand] = node;
+                int cols[] = {
+                        1 + cell,
+                        1 + cells + y * tiles + v,
+                        1 + 2 * cells + x * tiles + v,
+                        1 + 3 * cells + box * tiles + v };
+                for (int i = 0; i < cols.length; i++) {
+                    int n = node + i;
+                    int c = cols[i];
+                    column[n] = c;
+                    candidate[n] = cand;
+                    // Append at the bottom of the column
+                    up[n] = up[c];
+                    down[n] = c;
+                    down[up[c]] = n;
+                    up[c] = n;
+                    size[c]++;
+                    // Circular row of 4 nodes
+                    left[n] = i == 0 ? node + cols.length - 1 : n - 1;
+                    right[n] = i == cols.length - 1 ? node : n + 1;
+                }
+                node += cols.length;
+            }
+        }
+    }
+
+    @Override
+    public int[] solve(int[] puzzle) {
+        int solution[] = new int[cells];
+        return solve(puzzle, solution) ? solution : null;
+    }
+
+    @Override
+    public boolean solve(int[] puzzle, int[] solution) {
+        if (countSolutions(puzzle, 1) == 0)
+            return false;
+        // The search stops right at the first solution, leaving its rows in picked
+        for (int k = 0; k < cells; k++) {
+            int cand = candidate[picked[k]];
+            solution[cand / tiles] = cand % tiles + 1;
+        }
+        return true;
+    }
+
+    @Override
+    public int countSolutions(int[] puzzle, int limit) {
+        return countSolutions(puzzle, limit, Long.MAX_VALUE);
+    }
+
+    @Override
+    public int countSolutions(int[] puzzle, int limit, long maxSteps) {
+        this.limit = limit;
+        solutions = 0;
+        steps = maxSteps;
+        int givens = coverGivens(puzzle);
+        boolean stopped = givens >= 0 && limit > 0 && search(givens);
+        uncoverPicked(givens < 0 ? -givens - 1 : givens);
+        return stopped && solutions < limit ? -1 : solutions;
+    }
+
+    /**
+     * Pick the row of every given
+     * @return number of givens picked, or -(picked + 1) if a given clashes with an earlier one
+     */
+    private int coverGivens(int[] puzzle) {
+        if (puzzle.length != cells)
+            throw new IllegalArgumentException("Puzzle must have " + cells + " tiles");
+        int k = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int value = puzzle[cell];
+            if (value == 0)
+                continue;
+            int row = rowStart[cell * tiles + value - 1];
+            int n = row;
+            do {
+                if (isCovered(column[n]))
+                    return -k - 1;
+                n = right[n];
+            } while (n != row);
+            picked[k++] = row;
+            n = row;
+            do {
+                cover(column[n]);
+                n = right[n];
+            } while (n != row);
+        }
+        return k;
+    }
+
+    /**
+     * Undo the first count picks in reverse order
+     * */
+    private void uncoverPicked(int count) {
+        for (int k = count - 1; k >= 0; k--) {
+            int row = picked[k];
+            int n = left[row];
+            do {
+                uncover(column[n]);
+                n = left[n];
+            } while (n != left[row]);
+        }
+    }
+
+    /**
+     * @return true once the solution limit is reached or the steps ran out
+     */
+    private boolean search(int k) {
+        if (right[ROOT] == ROOT)
+            return ++solutions >= limit;
+        if (--steps < 0)
+            return true;
+        // Branch on the column with the fewest rows
+        int c = right[ROOT];
+        for (int j = right[c]; j != ROOT; j = right[j]) {
+            if (size[j] < size[c])
+                c = j;
+        }
+        if (size[c] == 0)
+            return false;
+        cover(c);
+        boolean found = false;
+        for (int r = down[c]; r != c && !found; r = down[r]) {
+            picked[k] = r;
+            for (int j = right[r]; j != r; j = right[j]) {
+                cover(column[j]);
+            }
+            found = search(k + 1);
+            for (int j = left[r]; j != r; j = left[j]) {
+                uncover(column[j]);
+            }
+        }
+        uncover(c);
+        return found;
+    }
+
+    private boolean isCovered(int c) {
+        return right[left[c]] != c;
+    }
+
+    private void cover(int c) {
+        right[left[c]] = right[c];
+        left[right[c]] = left[c];
+        for (int i = down[c]; i != c; i = down[i]) {
+            for (int j = right[i]; j != i; j = right[j]) {
+                up[down[j]] = up[j];
+                down[up[j]] = down[j];
+                size[column[j]]--;
+            }
+        }
+    }
+
+    private void uncover(int c) {
+        for (int i = up[c]; i != c; i = up[i]) {
+            for (int j = left[i]; j != i; j = left[j]) {
+                size[column[j]]++;
+                up[down[j]] = j;
+                down[up[j]] = j;
+            }
+        }
+        right[left[c]] = c;
+        left[right[c]] = c;
+    }
+}
@@ -0,0 +1,13 @@
+package maitta.git.sudoku.Models;
+
+/**
+ * Difficulty levels of a puzzle, in the order the new game dialog lists them
+ */
+public final class Difficulty {
+    public static final int EASY = 0;
+    public static final int MEDIUM = 1;
+    public static final int HARD = 2;
+
+    private Difficulty() {
+    }
+}
@@ -0,0 +1,592 @@
+package maitta.git.sudoku.Models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Rates a puzzle by replaying it with human techniques only. At every step the simplest technique
+ * that makes progress is applied; the hardest one needed and the sum of their weights make up the
+ * grade. The same steps give hints on a board being played. Grades boards of one box size, 9x9
+ * by default. Buffers are reused between puzzles, use one instance per thread.
+ */
+public class Grader {
+    private final int size;
+    private final int cells;
+    private final int all;
+    /**
+     * Tiles of every unit: rows first, then columns, then boxes
+     * */
+    private final int units[][];
+    private final int peers[][];
+    private final int rowOf[];
+    private final int colOf[];
+    private final int boxOf[];
+
+    public Grader() {
+        this(CandidateMasks.BOX_SIZE);
+    }
+
+    /**
+     * @param boxSize box size of the puzzles to grade, see CandidateMasks
+     */
+    public Grader(int boxSize) {
+        size = CandidateMasks.sizeOf(boxSize);
+        cells = size * size;
+        all = CandidateMasks.all(size);
+        units = new int[3 * size][size];
+        peers = new int[cells][];
+        rowOf = new int[cells];
+        colOf = new int[cells];
+        boxOf = new int[cells];
+        grid = new int[cells];
+        cands = new int[cells];
+        eliminatedBy = new int[cells * size];
+        int filled[] = new int[size];
+        for (int i = 0; i < cells; i++) {
+            rowOf[i] = i / size;
+            colOf[i] = i % size;
+            boxOf[i] = CandidateMasks.box(colOf[i], rowOf[i], boxSize);
+            units[rowOf[i]][colOf[i]] = i;
+            units[size + colOf[i]][rowOf[i]] = i;
+            units[2 * size + boxOf[i]][filled[boxOf[i]]++] = i;
+        }
+        // Every tile sees its row and column plus the rest of its box
+        final int count = 3 * size - 2 * boxSize - 1;
+        for (int i = 0; i < cells; i++) {
+            int n = 0;
+            peers[i] = new int[count];
+            for (int j : units[rowOf[i]]) {
+                if (j != i)
+                    peers[i][n++] = j;
+            }
+            for (int j : units[size + colOf[i]]) {
+                if (j != i)
+                    peers[i][n++] = j;
+            }
+            for (int j : units[2 * size + boxOf[i]]) {
+                if (rowOf[j] != rowOf[i] && colOf[j] != colOf[i])
+                    peers[i][n++] = j;
+            }
+        }
+    }
+
+    /**
+     * Outcome of grading a puzzle
+     * */
+    public static class Grade {
+        private final Technique hardest;
+        private final int score;
+        private final boolean solved;
+
+        public Grade(Technique hardest, int score, boolean solved) {
+            this.hardest = hardest;
+            this.score = score;
+            this.solved = solved;
+        }
+
+        /**
+         * Hardest technique the puzzle needed, GUESS if the techniques ran out
+         * */
+        public Technique getHardest() {
+            return hardest;
+        }
+        /**
+         * Sum of the weights of every step taken
+         * */
+        public int getScore() {
+            return score;
+        }
+        /**
+         * Whether the techniques alone were enough to fill the grid
+         * */
+        public boolean isSolved() {
+            return solved;
+        }
+        /**
+         * Difficulty level, see Difficulty
+         * */
+        public int getDifficulty() {
+            return hardest.getDifficulty();
+        }
+    }
+
+    /**
+     * Next placement found on a board, see hint
+     * */
+    public static class Hint {
+        private final Technique technique;
+        private final int cell;
+        private final int value;
+        private final int reasons[];
+
+        public Hint(Technique technique, int cell, int value, int[] reasons) {
+            this.technique = technique;
+            this.cell = cell;
+            this.value = value;
+            this.reasons = reasons;
+        }
+
+        /**
+         * Hardest technique the placement needed, eliminations included
+         * */
+        public Technique getTechnique() {
+            return technique;
+        }
+        /**
+         * Index of the tile to fill, y * size + x
+         * */
+        public int getCell() {
+            return cell;
+        }
+        public int getValue() {
+            return value;
+        }
+        /**
+         * Tiles that justify the placement, sorted by index
+         * */
+        public int[] getReasons() {
+            return reasons;
+        }
+    }
+
+    private final int grid[];
+    /**
+     * Candidate mask of every tile, 0 once filled
+     * */
+    private final int cands[];
+    private int empty;
+    /**
+     * Set while hinting, grading does not keep track of why candidates went away
+     * */
+    private boolean recording;
+    /**
+     * Elimination steps taken so far while hinting
+     * */
+    private final ArrayList<Elimination> eliminations = new ArrayList<>();
+    /**
+     * For every tile and value, 1 + the index of the elimination that removed the candidate
+     * */
+    private final int eliminatedBy[];
+    private final BitSet reasons = new BitSet();
+    private int placedCell;
+    private int[] placedUnit;
+
+    /**
+     * Pattern of an elimination step, the tiles that still have the candidate it removed elsewhere
+     * */
+    private static class Elimination {
+        final Technique technique;
+        final int cells[];
+
+        Elimination(Technique technique, int[] cells) {
+            this.technique = technique;
+            this.cells = cells;
+        }
+    }
+
+    public Grade grade(int[] puzzle) {
+        if (puzzle.length != cells)
+            throw new IllegalArgumentException("Puzzle must have " + cells + " tiles");
+        Technique hardest = Technique.NAKED_SINGLE;
+        int score = 0;
+        if (!load(puzzle))
+            return new Grade(Technique.GUESS, Technique.GUESS.getWeight(), false);
+        while (empty > 0) {
+            Technique technique = step();
+            if (technique == null)
+                technique = Technique.GUESS;
+            score += technique.getWeight();
+            if (technique.ordinal() > hardest.ordinal())
+                hardest = technique;
+            if (technique == Technique.GUESS)
+                break;
+        }
+        return new Grade(hardest, score, empty == 0);
+    }
+
+    /**
+     * Find the simplest placement the techniques lead to from a board being played. Eliminations
+     * needed on the way are not applied to the board; only the ones that removed a candidate the
+     * placement relies on add the tiles of their patterns to the reasons. Every step removes a
+     * candidate at least, so even 25x25 boards take well under a frame.
+     * @param puzzle current tiles, entries included
+     * @param used masks of the same tiles, the candidates are taken from them as they are
+     * @return null if the board is full, a tile has no candidate left or the techniques run out
+     */
+    public Hint hint(int[] puzzle, CandidateMasks used) {
+        if (puzzle.length != cells)
+            throw new IllegalArgumentException("Puzzle must have " + cells + " tiles");
+        reasons.clear();
+        eliminations.clear();
+        Arrays.fill(eliminatedBy, 0);
+        empty = 0;
+        for (int i = 0; i < cells; i++) {
+            grid[i] = puzzle[i];
+            cands[i] = 0;
+            if (puzzle[i] != 0)
+                continue;
+            cands[i] = all & ~used.getUsed(colOf[i], rowOf[i], 0);
+            if (cands[i] == 0)
+                return null;
+            empty++;
+        }
+        recording = true;
+        try {
+            while (empty > 0) {
+                Technique technique = step();
+                if (technique == null)
+                    return null;
+                if (technique == Technique.NAKED_SINGLE || technique == Technique.HIDDEN_SINGLE)
+                    return placement(technique);
+            }
+            return null;
+        } finally {
+            recording = false;
+        }
+    }
+
+    /**
+     * Hint for the tile just filled, the first placement hint found
+     * */
+    private Hint placement(Technique technique) {
+        int value = grid[placedCell];
+        Technique hardest = technique == Technique.NAKED_SINGLE
+                ? markNakedSingle(placedCell)
+                : markHiddenSingle(placedCell, value);
+        if (technique.ordinal() > hardest.ordinal())
+            hardest = technique;
+        int marked[] = new int[reasons.cardinality()];
+        int n = 0;
+        for (int i = reasons.nextSetBit(0); i >= 0; i = reasons.nextSetBit(i + 1)) {
+            marked[n++] = i;
+        }
+        return new Hint(hardest, placedCell, value, marked);
+    }
+
+    /**
+     * One filled peer for every value the tile cannot take, or the elimination that removed it
+     * @return hardest of those eliminations, NAKED_SINGLE if there were none
+     */
+    private Technique markNakedSingle(int cell) {
+        int seen = CandidateMasks.bit(grid[cell]);
+        for (int peer : peers[cell]) {
+            if (grid[peer] == 0)
+                continue;
+            int b = CandidateMasks.bit(grid[peer]);
+            if ((seen & b) == 0) {
+                reasons.set(peer);
+                seen |= b;
+            }
+        }
+        Technique hardest = Technique.NAKED_SINGLE;
+        for (int missing = all & ~seen; missing != 0; missing &= missing - 1) {
+            hardest = markElimination(cell, missing & -missing, hardest);
+        }
+        return hardest;
+    }
+
+    /**
+     * One peer holding the value for every other empty tile of the unit, or the elimination that
+     * removed the value from it
+     * @return hardest of those eliminations, NAKED_SINGLE if there were none
+     */
+    private Technique markHiddenSingle(int cell, int value) {
+        Technique hardest = Technique.NAKED_SINGLE;
+        for (int other : placedUnit) {
+            if (other == cell || grid[other] != 0)
+                continue;
+            boolean found = false;
+            for (int peer : peers[other]) {
+                if (peer != cell && grid[peer] == value) {
+                    reasons.set(peer);
+                    found = true;
+                    break;
+                }
+            }
+            if (!found)
+                hardest = markElimination(other, CandidateMasks.bit(value), hardest);
+        }
+        return hardest;
+    }
+
+    /**
+     * Add the pattern of the elimination that removed the candidate from the tile to the reasons
+     * @return the harder of its technique and hardest
+     */
+    private Technique markElimination(int cell, int b, Technique hardest) {
+        int index = eliminatedBy[cell * size + Integer.numberOfTrailingZeros(b)];
+        if (index == 0)
+            return hardest;
+        Elimination elimination = eliminations.get(index - 1);
+        for (int reason : elimination.cells) {
+            reasons.set(reason);
+        }
+        return elimination.technique.ordinal() > hardest.ordinal() ? elimination.technique : hardest;
+    }
+
+    /**
+     * Remove candidates from a tile, remembering the elimination step while hinting
+     * */
+    private boolean eliminate(int cell, int mask) {
+        int removed = cands[cell] & mask;
+        if (removed == 0)
+            return false;
+        cands[cell] &= ~mask;
+        if (recording) {
+            for (; removed != 0; removed &= removed - 1) {
+                eliminatedBy[cell * size + Integer.numberOfTrailingZeros(removed)] =
+                        eliminations.size() + 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finish an elimination step, its pattern is made of the tiles of the lines that still have
+     * the candidates
+     * */
+    private void record(Technique technique, int mask, int[]... lines) {
+        if (!recording)
+            return;
+        int pattern[] = new int[size * lines.length];
+        int n = 0;
+        for (int[] line : lines) {
+            for (int cell : line) {
+                if ((cands[cell] & mask) != 0)
+                    pattern[n++] = cell;
+            }
+        }
+        eliminations.add(new Elimination(technique, Arrays.copyOf(pattern, n)));
+    }
+
+    /**
+     * Copy the puzzle and work out the candidates of every empty tile
+     * @return false if two givens clash
+     */
+    private boolean load(int[] puzzle) {
+        empty = 0;
+        for (int i = 0; i < cells; i++) {
+            grid[i] = 0;
+            cands[i] = all;
+        }
+        for (int i = 0; i < cells; i++) {
+            if (puzzle[i] == 0) {
+                empty++;
+                continue;
+            }
+            if ((cands[i] & CandidateMasks.bit(puzzle[i])) == 0)
+                return false;
+            place(i, puzzle[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Apply the simplest technique that makes progress
+     * @return the technique applied, null if none did
+     */
+    private Technique step() {
+        if (nakedSingle())
+            return Technique.NAKED_SINGLE;
+        if (hiddenSingle())
+            return Technique.HIDDEN_SINGLE;
+        if (pointing())
+            return Technique.POINTING;
+        if (boxLine())
+            return Technique.BOX_LINE;
+        if (nakedPair())
+            return Technique.NAKED_PAIR;
+        if (xWing())
+            return Technique.X_WING;
+        return null;
+    }
+
+    private void place(int cell, int value) {
+        int b = CandidateMasks.bit(value);
+        grid[cell] = value;
+        cands[cell] = 0;
+        for (int peer : peers[cell]) {
+            cands[peer] &= ~b;
+        }
+    }
+
+    private void fill(int cell, int b) {
+        placedCell = cell;
+        place(cell, Integer.numberOfTrailingZeros(b) + 1);
+        empty--;
+    }
+
+    private boolean nakedSingle() {
+        for (int i = 0; i < cells; i++) {
+            if (grid[i] == 0 && Integer.bitCount(cands[i]) == 1) {
+                fill(i, cands[i]);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hiddenSingle() {
+        for (int[] unit : units) {
+            int once = 0;
+            int twice = 0;
+            for (int cell : unit) {
+                twice |= once & cands[cell];
+                once |= cands[cell];
+            }
+            int unique = once & ~twice;
+            if (unique == 0)
+                continue;
+            int b = unique & -unique;
+            for (int cell : unit) {
+                if ((cands[cell] & b) != 0) {
+                    placedUnit = unit;
+                    fill(cell, b);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean pointing() {
+        for (int u = 2 * size; u < 3 * size; u++) {
+            for (int b = 1; b <= all; b <<= 1) {
+                int row = -1;
+                int col = -1;
+                int count = 0;
+                for (int cell : units[u]) {
+                    if ((cands[cell] & b) == 0)
+                        continue;
+                    row = count == 0 || row == rowOf[cell] ? rowOf[cell] : size;
+                    col = count == 0 || col == colOf[cell] ? colOf[cell] : size;
+                    count++;
+                }
+                if (count < 2)
+                    continue;
+                int box = u - 2 * size;
+                if (row < size && eliminateOutsideBox(units[row], box, b)
+                        || col < size && eliminateOutsideBox(units[size + col], box, b)) {
+                    record(Technique.POINTING, b, units[u]);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean eliminateOutsideBox(int[] line, int box, int b) {
+        boolean changed = false;
+        for (int cell : line) {
+            if (boxOf[cell] != box && eliminate(cell, b))
+                changed = true;
+        }
+        return changed;
+    }
+
+    private boolean boxLine() {
+        for (int u = 0; u < 2 * size; u++) {
+            for (int b = 1; b <= all; b <<= 1) {
+                int box = -1;
+                int count = 0;
+                for (int cell : units[u]) {
+                    if ((cands[cell] & b) == 0)
+                        continue;
+                    box = count == 0 || box == boxOf[cell] ? boxOf[cell] : size;
+                    count++;
+                }
+                if (count < 2 || box == size)
+                    continue;
+                boolean changed = false;
+                for (int cell : units[2 * size + box]) {
+                    boolean onLine = u < size ? rowOf[cell] == u : colOf[cell] == u - size;
+                    if (!onLine && eliminate(cell, b))
+                        changed = true;
+                }
+                if (changed) {
+                    record(Technique.BOX_LINE, b, units[u]);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean nakedPair() {
+        for (int[] unit : units) {
+            for (int i = 0; i < size; i++) {
+                int pair = cands[unit[i]];
+                if (Integer.bitCount(pair) != 2)
+                    continue;
+                for (int j = i + 1; j < size; j++) {
+                    if (cands[unit[j]] != pair)
+                        continue;
+                    boolean changed = false;
+                    for (int k = 0; k < size; k++) {
+                        int cell = unit[k];
+                        if (k != i && k != j && eliminate(cell, pair))
+                            changed = true;
+                    }
+                    if (changed) {
+                        // Only the pair is left with its values
+                        record(Technique.NAKED_PAIR, pair, unit);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean xWing() {
+        for (int b = 1; b <= all; b <<= 1) {
+            // Rows as base lines eliminating in columns, then the other way round
+            if (xWing(b, 0) || xWing(b, size))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param base offset of the base lines in units, 0 for rows and size for columns
+     */
+    private boolean xWing(int b, int base) {
+        int cover = size - base; // offset of the crossing lines
+        for (int l1 = 0; l1 < size; l1++) {
+            int positions = positions(units[base + l1], b);
+            if (Integer.bitCount(positions) != 2)
+                continue;
+            for (int l2 = l1 + 1; l2 < size; l2++) {
+                if (positions(units[base + l2], b) != positions)
+                    continue;
+                boolean changed = false;
+                for (int p = positions; p != 0; p &= p - 1) {
+                    int line = Integer.numberOfTrailingZeros(p);
+                    int cells[] = units[cover + line];
+                    for (int k = 0; k < size; k++) {
+                        if (k != l1 && k != l2 && eliminate(cells[k], b))
+                            changed = true;
+                    }
+                }
+                if (changed) {
+                    record(Technique.X_WING, b, units[base + l1], units[base + l2]);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mask of the positions along the line where the value is still a candidate
+     * */
+    private int positions(int[] line, int b) {
+        int positions = 0;
+        for (int k = 0; k < size; k++) {
+            if ((cands[line[k]] & b) != 0)
+                positions |= 1 << k;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,71 @@
+package maitta.git.sudoku.Models;
+
+import java.io.IOException;
+
+/**
+ * Performance counters meant for real devices: frame draw time and time spent updating and
+ * rebuilding the used tiles masks, each in a fixed-size histogram. Callers check isEnabled before
+ * reading any clock, so disabled metrics cost one field read. Allocations are not counted, ART
+ * has no reliable per thread counter; PuzzleViewAllocationTest keeps onDraw free of them.
+ */
+public class Metrics {
+    private boolean enabled;
+    private final Histogram frameTimes = new Histogram();
+    private final Histogram moveTimes = new Histogram();
+    private final Histogram rebuildTimes = new Histogram();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Nanoseconds spent in onDraw
+     * */
+    public Histogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    /**
+     * Nanoseconds spent in setTileIfValid
+     * */
+    public Histogram getMoveTimes() {
+        return moveTimes;
+    }
+
+    /**
+     * Nanoseconds spent in calculateUsedTiles
+     * */
+    public Histogram getRebuildTimes() {
+        return rebuildTimes;
+    }
+
+    /**
+     * One line summary of a histogram, e.g. "move ns n=12 p50=240 p90=310 p99=900 max=1200"
+     * */
+    public static String describe(String name, Histogram histogram) {
+        return name + " n=" + histogram.getCount()
+                + " p50=" + histogram.getValueAtPercentile(50)
+                + " p90=" + histogram.getValueAtPercentile(90)
+                + " p99=" + histogram.getValueAtPercentile(99)
+                + " max=" + histogram.getMax();
+    }
+
+    /**
+     * Write one line per histogram
+     * */
+    public void dump(Appendable out) throws IOException {
+        out.append(describe("frame ns", frameTimes)).append('\n');
+        out.append(describe("move ns", moveTimes)).append('\n');
+        out.append(describe("rebuild ns", rebuildTimes)).append('\n');
+    }
+
+    public void reset() {
+        frameTimes.reset();
+        moveTimes.reset();
+        rebuildTimes.reset();
+    }
+}
@@ -0,0 +1,211 @@
+package maitta.git.sudoku.Models;
+
+import java.util.Arrays;
+
+/**
+ * Undo and redo history of a game. Every change is one packed int in a growable array, no
+ * objects are created per move. Past MAX_RECORDS the oldest half of the actions is forgotten.
+ * A record either changes a tile from one value to another or flips one pencil mark; the records
+ * of a single action, e.g. a move and the marks it pruned, are linked so that they are undone and
+ * redone together.
+ * <p>
+ * Record layout: bits 0-9 the cell, 10-14 the old value or the flipped mark, 15-19 the new value,
+ * bit 30 set for marks and bit 31 set when the record belongs to the action before it.
+ */
+public class MoveHistory {
+    private static final int CELL_MASK = (1 << 10) - 1;
+    private static final int VALUE_MASK = (1 << 5) - 1;
+    private static final int OLD_SHIFT = 10;
+    private static final int NEW_SHIFT = 15;
+    private static final int MARK = 1 << 30;
+    public static final int LINKED = 1 << 31;
+    /**
+     * 4 MB of records, far more than any game needs
+     * */
+    public static final int MAX_RECORDS = 1 << 20;
+
+    private int records[];
+    /**
+     * Records in use, the ones from position on can be redone
+     * */
+    private int count;
+    private int position;
+    /**
+     * Records at the start of the array that a snapshot still reads, they are copied before being
+     * overwritten
+     * */
+    private int shared;
+
+    public MoveHistory() {
+        records = new int[64];
+    }
+
+    /**
+     * Restore a saved history
+     * @param records as returned by toArray
+     * @param position number of records that are done, the rest can be redone
+     */
+    public MoveHistory(int records[], int position) {
+        if (records.length > MAX_RECORDS)
+            throw new IllegalArgumentException(records.length + " records, at most "
+                    + MAX_RECORDS + " are kept");
+        if (position < 0 || position > records.length)
+            throw new IllegalArgumentException("Position " + position + " outside of "
+                    + records.length + " records");
+        this.records = Arrays.copyOf(records, Math.max(records.length, 64));
+        this.count = records.length;
+        this.position = position;
+    }
+
+    private MoveHistory(int records[], int count, int position, int shared) {
+        this.records = records;
+        this.count = count;
+        this.position = position;
+        this.shared = shared;
+    }
+
+    /**
+     * Record of a tile changed from previous to value
+     * */
+    public static int tile(int cell, int previous, int value) {
+        return cell | previous << OLD_SHIFT | value << NEW_SHIFT;
+    }
+
+    /**
+     * Record of a pencil mark flipped, undoing it flips it back
+     * */
+    public static int mark(int cell, int value) {
+        return MARK | cell | value << OLD_SHIFT;
+    }
+
+    public static boolean isMark(int record) {
+        return (record & MARK) != 0;
+    }
+
+    public static boolean isLinked(int record) {
+        return (record & LINKED) != 0;
+    }
+
+    public static int getCell(int record) {
+        return record & CELL_MASK;
+    }
+
+    /**
+     * Value the tile had before the change, or the value of the flipped mark
+     * */
+    public static int getPrevious(int record) {
+        return record >>> OLD_SHIFT & VALUE_MASK;
+    }
+
+    public static int getValue(int record) {
+        return record >>> NEW_SHIFT & VALUE_MASK;
+    }
+
+    /**
+     * Append a record, anything that could be redone is dropped
+     * */
+    public void add(int record) {
+        if (position == MAX_RECORDS) {
+            dropOldest();
+        } else if (position == records.length) {
+            records = Arrays.copyOf(records, Math.min(2 * records.length, MAX_RECORDS));
+            shared = 0;
+        } else if (position < shared) {
+            // Undone records a snapshot still reads
+            records = records.clone();
+            shared = 0;
+        }
+        records[position++] = record;
+        count = position;
+    }
+
+    /**
+     * Forget the older half of the records, starting over at an action so none is cut in two
+     * */
+    private void dropOldest() {
+        int start = position / 2;
+        while (start < position && isLinked(records[start])) {
+            start++;
+        }
+        if (shared > 0) {
+            int kept[] = new int[records.length];
+            System.arraycopy(records, start, kept, 0, position - start);
+            records = kept;
+            shared = 0;
+        } else {
+            System.arraycopy(records, start, records, 0, position - start);
+        }
+        position -= start;
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < count;
+    }
+
+    /**
+     * Step back over the last record, call again while it is linked to finish the action
+     * */
+    public int undo() {
+        if (position == 0)
+            throw new IllegalStateException("Nothing to undo");
+        return records[--position];
+    }
+
+    /**
+     * Step over the next record, call again while the following one is linked to finish the action
+     * */
+    public int redo() {
+        if (position == count)
+            throw new IllegalStateException("Nothing to redo");
+        return records[position++];
+    }
+
+    /**
+     * True if the next record to redo belongs to the action just redone
+     * */
+    public boolean isNextLinked() {
+        return position < count && isLinked(records[position]);
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+        position = 0;
+    }
+
+    /**
+     * Independent copy, e.g. to keep playing from a loaded game
+     * */
+    public MoveHistory copy() {
+        return new MoveHistory(toArray(), position);
+    }
+
+    /**
+     * Read only view of the history as it is now, e.g. to hand to the saver thread after every
+     * move. Takes O(1): both share the array until one of them overwrites a record the other can
+     * see, which copies it first.
+     * */
+    public MoveHistory snapshot() {
+        shared = Math.max(shared, count);
+        // Any record the view writes could be one this history writes as well
+        return new MoveHistory(records, count, position, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Copy of every record, undone ones included, e.g. to save them
+     * */
+    public int[] toArray() {
+        return Arrays.copyOf(records, count);
+    }
+}
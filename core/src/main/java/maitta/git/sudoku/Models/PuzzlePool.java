@@ -0,0 +1,177 @@
+package maitta.git.sudoku.Models;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded pools of ready made puzzles, one per box size and difficulty. A single low priority
+ * background thread tops a pool up to CAPACITY whenever it drops below LOW_WATER_MARK, so
+ * starting a game only has to take a puzzle off a queue. Refills stop while paused. Only the box
+ * size of the generator and the ones asked for through take or prepare are kept filled.
+ */
+public class PuzzlePool {
+    public static final int CAPACITY = 4;
+    public static final int LOW_WATER_MARK = 2;
+    private static final int DIFFICULTIES[] = { Difficulty.EASY, Difficulty.MEDIUM, Difficulty.HARD };
+
+    private final Queue<int[]> pools[][];
+    private final AtomicBoolean refilling[][];
+    /**
+     * Box sizes that are kept filled
+     * */
+    private final AtomicBoolean active[];
+    /**
+     * Only used from the executor thread, created on the first refill of their box size
+     * */
+    private final Generator generators[];
+    private final int defaultBoxSize;
+    private final ExecutorService executor;
+    private volatile boolean paused = true;
+
+    public PuzzlePool() {
+        this(new Generator(), Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PuzzlePool");
+                thread.setDaemon(true);
+                // Maps to nice 19 on Android, the lowest priority, so rendering always wins
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }));
+    }
+
+    /**
+     * @param generator fills the pools of its box size, the default one of take(int)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PuzzlePool(Generator generator, ExecutorService executor) {
+        this.executor = executor;
+        final int boxSizes = CandidateMasks.MAX_BOX_SIZE + 1;
+        pools = new Queue[boxSizes][DIFFICULTIES.length];
+        refilling = new AtomicBoolean[boxSizes][DIFFICULTIES.length];
+        active = new AtomicBoolean[boxSizes];
+        generators = new Generator[boxSizes];
+        for (int box = 0; box < boxSizes; box++) {
+            active[box] = new AtomicBoolean();
+            for (int i = 0; i < DIFFICULTIES.length; i++) {
+                pools[box][i] = new ArrayBlockingQueue<>(CAPACITY);
+                refilling[box][i] = new AtomicBoolean();
+            }
+        }
+        defaultBoxSize = generator.getBoxSize();
+        generators[defaultBoxSize] = generator;
+        active[defaultBoxSize].set(true);
+    }
+
+    /**
+     * Take a ready puzzle of the generator's box size off the pool
+     * @param difficulty easy, normal & hard, see Difficulty
+     * @return the puzzle, null if the pool for that difficulty is empty
+     */
+    public int[] take(int difficulty) {
+        return take(defaultBoxSize, difficulty);
+    }
+
+    /**
+     * Take a ready puzzle off the pool, the box size is kept filled from now on
+     * @return the puzzle, null if the pool for that box size and difficulty is empty
+     */
+    public int[] take(int boxSize, int difficulty) {
+        int i = index(difficulty);
+        int puzzle[] = pools[boxSize][i].poll();
+        active[boxSize].set(true);
+        refillIfLow(boxSize, i);
+        return puzzle;
+    }
+
+    /**
+     * Start filling the pools of a box size ahead of the first take, e.g. as soon as the
+     * player picks a board size
+     * */
+    public void prepare(int boxSize) {
+        active[boxSize].set(true);
+        for (int i = 0; i < DIFFICULTIES.length; i++) {
+            refillIfLow(boxSize, i);
+        }
+    }
+
+    /**
+     * Number of puzzles of the generator's box size ready for the given difficulty
+     * */
+    public int size(int difficulty) {
+        return size(defaultBoxSize, difficulty);
+    }
+
+    public int size(int boxSize, int difficulty) {
+        return pools[boxSize][index(difficulty)].size();
+    }
+
+    /**
+     * Stop refilling, a refill in progress ends after the puzzle it is generating
+     * */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Start refilling again, topping up every pool below its low water mark
+     * */
+    public void resume() {
+        paused = false;
+        for (int box = 0; box < active.length; box++) {
+            if (!active[box].get())
+                continue;
+            for (int i = 0; i < DIFFICULTIES.length; i++) {
+                refillIfLow(box, i);
+            }
+        }
+    }
+
+    /**
+     * Stop the background thread for good
+     * */
+    public void shutdown() {
+        paused = true;
+        executor.shutdownNow();
+    }
+
+    private int index(int difficulty) {
+        switch (difficulty) {
+            case Difficulty.HARD:
+                return 2;
+            case Difficulty.MEDIUM:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private void refillIfLow(final int box, final int i) {
+        final Queue<int[]> pool = pools[box][i];
+        if (paused || pool.size() >= LOW_WATER_MARK || !refilling[box][i].compareAndSet(false, true))
+            return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (generators[box] == null)
+                        generators[box] = new Generator(new Random(), box);
+                    // One candidate at a time, only the ones graded as asked are kept
+                    while (!paused && pool.size() < CAPACITY) {
+                        int puzzle[] = generators[box].tryGenerate(DIFFICULTIES[i]);
+                        if (puzzle != null)
+                            pool.offer(puzzle);
+                    }
+                } finally {
+                    refilling[box][i].set(false);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,299 @@
+package maitta.git.sudoku.Models;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Versioned binary form of a board, small enough to save on every move and simple enough to
+ * store puzzles back to back in bulk. A record is a 5 byte header (magic, version, box size,
+ * flags) followed by the tiles packed at 4 bits per cell for 9x9, a bitmap of the given cells
+ * and, when flagged, one candidate mask per cell and the move history. A 9x9 board without marks
+ * and history takes 57 bytes. Version 2 added the history, version 1 saves are still read.
+ */
+public class SaveFormat {
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x5344; // "SD"
+    private static final int HEADER_BYTES = 5;
+    private static final int FLAG_MARKS = 1;
+    private static final int FLAG_HISTORY = 2;
+    private static final int MAX_BOX_SIZE = CandidateMasks.MAX_BOX_SIZE;
+
+    /**
+     * Board state as written to and read from a save
+     */
+    public static class Snapshot {
+        private final int tiles[];
+        private final BitSet givens;
+        private final int marks[];
+        private final MoveHistory history;
+
+        public Snapshot(int tiles[], BitSet givens, int marks[]) {
+            this(tiles, givens, marks, null);
+        }
+
+        /**
+         * @param tiles row major values, 0 for empty
+         * @param givens cells that belong to the original puzzle
+         * @param marks candidate mask per cell with bit (value - 1) set per value, or null
+         * @param history undo and redo records, or null
+         */
+        public Snapshot(int tiles[], BitSet givens, int marks[], MoveHistory history) {
+            boxSize(tiles.length);
+            if (marks != null && marks.length != tiles.length)
+                throw new IllegalArgumentException("Expected " + tiles.length + " marks, got "
+                        + marks.length);
+            this.tiles = tiles;
+            this.givens = givens;
+            this.marks = marks;
+            this.history = history;
+        }
+
+        public int[] getTiles() {
+            return tiles;
+        }
+
+        public BitSet getGivens() {
+            return givens;
+        }
+
+        /**
+         * @return null when the save has no candidate marks
+         */
+        public int[] getMarks() {
+            return marks;
+        }
+
+        /**
+         * @return null when the save has no move history
+         */
+        public MoveHistory getHistory() {
+            return history;
+        }
+    }
+
+    private SaveFormat() {
+    }
+
+    /**
+     * Box size of a board with the given number of cells, e.g. 3 for 81
+     */
+    static int boxSize(int cells) {
+        return CandidateMasks.boxSizeOf(cells);
+    }
+
+    private static int bitsPerTile(int size) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(size);
+    }
+
+    private static int bytesFor(int values, int bits) {
+        return (values * bits + 7) / 8;
+    }
+
+    /**
+     * Encode one record
+     */
+    public static byte[] toBytes(Snapshot snapshot) {
+        final int cells = snapshot.tiles.length;
+        final int box = boxSize(cells);
+        final int size = box * box;
+        final int tileBits = bitsPerTile(size);
+        final boolean hasMarks = snapshot.marks != null;
+        final int history[] = snapshot.history != null ? snapshot.history.toArray() : null;
+        final int historyStart = HEADER_BYTES + bytesFor(cells, tileBits) + bytesFor(cells, 1)
+                + (hasMarks ? bytesFor(cells, size) : 0);
+        byte out[] = new byte[historyStart + (history != null ? 8 + 4 * history.length : 0)];
+        out[0] = (byte) (MAGIC >>> 8);
+        out[1] = (byte) MAGIC;
+        out[2] = (byte) VERSION;
+        out[3] = (byte) box;
+        out[4] = (byte) ((hasMarks ? FLAG_MARKS : 0) | (history != null ? FLAG_HISTORY : 0));
+        int bit = HEADER_BYTES * 8;
+        for (int i = 0; i < cells; i++) {
+            bit = pack(out, bit, snapshot.tiles[i], tileBits);
+        }
+        bit = align(bit);
+        for (int i = 0; i < cells; i++) {
+            bit = pack(out, bit, snapshot.givens != null && snapshot.givens.get(i) ? 1 : 0, 1);
+        }
+        bit = align(bit);
+        if (hasMarks) {
+            for (int i = 0; i < cells; i++) {
+                bit = pack(out, bit, snapshot.marks[i], size);
+            }
+        }
+        if (history != null) {
+            int at = putInt(out, historyStart, history.length);
+            at = putInt(out, at, snapshot.history.getPosition());
+            for (int record : history) {
+                at = putInt(out, at, record);
+            }
+        }
+        return out;
+    }
+
+    public static void write(OutputStream out, Snapshot snapshot) throws IOException {
+        out.write(toBytes(snapshot));
+    }
+
+    /**
+     * Read the next record
+     * @return null at the end of the stream, so bulk files can be read until it returns null
+     * @throws IOException when the data is not a save this version understands
+     */
+    public static Snapshot read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte header[] = new byte[HEADER_BYTES];
+        int first = data.read();
+        if (first < 0)
+            return null;
+        header[0] = (byte) first;
+        data.readFully(header, 1, HEADER_BYTES - 1);
+        if (((header[0] & 0xFF) << 8 | (header[1] & 0xFF)) != MAGIC)
+            throw new IOException("Not a saved puzzle");
+        int version = header[2] & 0xFF;
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported save version " + version);
+        final int box = header[3] & 0xFF;
+        if (box < 1 || box > MAX_BOX_SIZE)
+            throw new IOException("Unsupported box size " + box);
+        final boolean hasMarks = (header[4] & FLAG_MARKS) != 0;
+        final boolean hasHistory = (header[4] & FLAG_HISTORY) != 0;
+        final int size = box * box;
+        final int cells = size * size;
+        final int tileBits = bitsPerTile(size);
+        byte body[] = new byte[bytesFor(cells, tileBits) + bytesFor(cells, 1)
+                + (hasMarks ? bytesFor(cells, size) : 0)];
+        data.readFully(body);
+
+        int tiles[] = new int[cells];
+        int bit = 0;
+        for (int i = 0; i < cells; i++) {
+            tiles[i] = unpack(body, bit, tileBits);
+            bit += tileBits;
+            if (tiles[i] > size)
+                throw new IOException("Tile " + i + " out of range: " + tiles[i]);
+        }
+        bit = align(bit);
+        BitSet givens = new BitSet(cells);
+        for (int i = 0; i < cells; i++, bit++) {
+            if (unpack(body, bit, 1) != 0)
+                givens.set(i);
+        }
+        bit = align(bit);
+        int marks[] = null;
+        if (hasMarks) {
+            marks = new int[cells];
+            for (int i = 0; i < cells; i++) {
+                marks[i] = unpack(body, bit, size);
+                bit += size;
+            }
+        }
+        MoveHistory history = hasHistory ? readHistory(data, cells, size) : null;
+        return new Snapshot(tiles, givens, marks, history);
+    }
+
+    /**
+     * Read the history section, every record is checked against the board size
+     */
+    private static MoveHistory readHistory(DataInputStream data, int cells, int size)
+            throws IOException {
+        final int count = data.readInt();
+        final int position = data.readInt();
+        if (count < 0 || count > MoveHistory.MAX_RECORDS || position < 0 || position > count)
+            throw new IOException("Bad history of " + count + " records at " + position);
+        // Grown while reading so that a corrupt count runs into the end of the data first
+        int records[] = new int[Math.min(count, 1024)];
+        for (int i = 0; i < count; i++) {
+            if (i == records.length)
+                records = Arrays.copyOf(records, Math.min(count, 2 * records.length));
+            int record = data.readInt();
+            if (MoveHistory.getCell(record) >= cells || MoveHistory.getPrevious(record) > size
+                    || MoveHistory.getValue(record) > size)
+                throw new IOException("History record " + i + " out of range: " + record);
+            records[i] = record;
+        }
+        return new MoveHistory(records, position);
+    }
+
+    /**
+     * Replace file with the snapshot in a single write. The record goes to a temporary file that
+     * is synced and renamed over the old one, so a crash leaves either the old or the new save.
+     */
+    public static void writeAtomically(File file, Snapshot snapshot) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(toBytes(snapshot));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Read a save written by writeAtomically in a single read
+     */
+    public static Snapshot read(File file) throws IOException {
+        byte data[] = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            new DataInputStream(in).readFully(data);
+        } finally {
+            in.close();
+        }
+        Snapshot snapshot = read(new ByteArrayInputStream(data));
+        if (snapshot == null)
+            throw new EOFException("Empty save " + file);
+        return snapshot;
+    }
+
+    /**
+     * Write value big endian at the byte offset, the same order DataInputStream.readInt reads
+     */
+    private static int putInt(byte out[], int at, int value) {
+        out[at] = (byte) (value >>> 24);
+        out[at + 1] = (byte) (value >>> 16);
+        out[at + 2] = (byte) (value >>> 8);
+        out[at + 3] = (byte) value;
+        return at + 4;
+    }
+
+    /**
+     * Every section starts on a byte boundary
+     */
+    private static int align(int bit) {
+        return (bit + 7) & ~7;
+    }
+
+    /**
+     * Write value in its lowest bits at the bit position, most significant bit first
+     */
+    private static int pack(byte out[], int bit, int value, int bits) {
+        for (int b = bits - 1; b >= 0; b--, bit++) {
+            if ((value >>> b & 1) != 0)
+                out[bit >>> 3] |= 0x80 >>> (bit & 7);
+        }
+        return bit;
+    }
+
+    private static int unpack(byte in[], int bit, int bits) {
+        int value = 0;
+        for (int b = 0; b < bits; b++, bit++) {
+            value = value << 1 | (in[bit >>> 3] >>> (7 - (bit & 7)) & 1);
+        }
+        return value;
+    }
+}
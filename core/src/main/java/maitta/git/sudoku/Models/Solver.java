@@ -0,0 +1,36 @@
+package maitta.git.sudoku.Models;
+
+/**
+ * Solves puzzles in the format returned by GameViewModel.getPuzzle(): size * size tiles row by
+ * row, 0 for an empty tile. An instance solves boards of the box size it was created for.
+ * Implementations keep their search buffers between calls so they are not thread safe, use one
+ * instance per thread.
+ */
+public interface Solver {
+    /**
+     * Solve the puzzle without modifying it
+     * @return a new array with the solution, null if the puzzle has no solution
+     */
+    int[] solve(int[] puzzle);
+
+    /**
+     * Solve the puzzle into the given array
+     * @param solution receives the solution, its content is undefined if there is none
+     * @return false if the puzzle has no solution
+     */
+    boolean solve(int[] puzzle, int[] solution);
+
+    /**
+     * Count the solutions of the puzzle, stopping as soon as limit of them are found. A limit of
+     * 2 is enough to tell whether the solution is unique.
+     * @return number of solutions found, at most limit
+     */
+    int countSolutions(int[] puzzle, int limit);
+
+    /**
+     * Same as countSolutions(int[], int) but gives up after maxSteps search steps, so that a
+     * check on a large and sparse board has a bounded cost
+     * @return number of solutions found, or -1 if it gave up before reaching limit
+     */
+    int countSolutions(int[] puzzle, int limit, long maxSteps);
+}
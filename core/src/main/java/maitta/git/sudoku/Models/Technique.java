@@ -0,0 +1,41 @@
+package maitta.git.sudoku.Models;
+
+/**
+ * Human solving techniques from simplest to hardest, each with the score it adds every time a
+ * puzzle needs it and the difficulty level it belongs to.
+ */
+public enum Technique {
+    /** Only one value fits the tile */
+    NAKED_SINGLE(1, Difficulty.EASY),
+    /** A value fits only one tile of a row, column or box */
+    HIDDEN_SINGLE(2, Difficulty.EASY),
+    /** A value of a box is limited to one row or column, so the rest of it cannot have it */
+    POINTING(8, Difficulty.MEDIUM),
+    /** A value of a row or column is limited to one box, so the rest of the box cannot have it */
+    BOX_LINE(8, Difficulty.MEDIUM),
+    /** Two tiles of a unit share the same two candidates, no other tile of the unit can have them */
+    NAKED_PAIR(12, Difficulty.MEDIUM),
+    /** A value limited to the same two columns in two rows, or the other way round */
+    X_WING(30, Difficulty.HARD),
+    /** No known technique applies, the rest needs trial and error */
+    GUESS(100, Difficulty.HARD);
+
+    private final int weight;
+    private final int difficulty;
+
+    Technique(int weight, int difficulty) {
+        this.weight = weight;
+        this.difficulty = difficulty;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Difficulty level, see Difficulty
+     * */
+    public int getDifficulty() {
+        return difficulty;
+    }
+}
@@ -0,0 +1,679 @@
+package maitta.git.sudoku.ViewModels;
+
+import maitta.git.sudoku.Models.CandidateMasks;
+import maitta.git.sudoku.Models.DancingLinksSolver;
+import maitta.git.sudoku.Models.Difficulty;
+import maitta.git.sudoku.Models.Generator;
+import maitta.git.sudoku.Models.Grader;
+import maitta.git.sudoku.Models.Metrics;
+import maitta.git.sudoku.Models.MoveHistory;
+import maitta.git.sudoku.Models.PuzzlePool;
+import maitta.git.sudoku.Models.SaveFormat;
+import maitta.git.sudoku.Models.Solver;
+
+import java.util.BitSet;
+import java.util.Random;
+
+public class GameViewModel {
+    private int puzzle[];
+    public int[] getPuzzle(){
+        return puzzle;
+    }
+
+    public static final int DIFFICULTY_EASY = Difficulty.EASY;
+    public static final int DIFFICULTY_MEDIUM = Difficulty.MEDIUM;
+    public static final int DIFFICULTY_HARD = Difficulty.HARD;
+    public static final String KEY_DIFFICULTY = "maitta.git.sudoku.difficulty";
+
+    public static final String PREF_PUZZLE = "puzzle";
+    public static final String SAVE_FILE = "puzzle.sav";
+    public static final int DIFFICULTY_CONTINUE = -1;
+
+    /**
+     * Box size and tiles per row of the current puzzle, 3 and 9 unless a game of another
+     * size was started or continued
+     * */
+    private int boxSize = CandidateMasks.BOX_SIZE;
+    private int size = CandidateMasks.SIZE;
+    public int getBoxSize(){
+        return boxSize;
+    }
+    public int getSize(){
+        return size;
+    }
+    /**
+     * Box size of the puzzles started by setPuzzle from now on
+     * */
+    private int newBoxSize = CandidateMasks.BOX_SIZE;
+    public int getNewBoxSize(){
+        return newBoxSize;
+    }
+    public void setNewBoxSize(int boxSize){
+        if (boxSize < 2 || boxSize > CandidateMasks.MAX_BOX_SIZE)
+            throw new IllegalArgumentException("Unsupported box size " + boxSize);
+        newBoxSize = boxSize;
+    }
+
+    /**
+     * Tiles of the original puzzle, they cannot be changed by the player
+     * */
+    private final BitSet givens = new BitSet();
+    /**
+     * Solution of the givens, solved on first use and dropped with the puzzle
+     * */
+    private int solution[];
+    private Solver solver;
+    /**
+     * Hint for the board as it is, worked out on first use and dropped by the next change
+     * */
+    private Grader.Hint hint;
+    private boolean hintCached;
+    private Grader grader;
+
+    /**
+     * Pencil marks of every tile, bit (value - 1) set per noted value. An int per tile so that
+     * 16x16 and 25x25 boards fit, 9x9 boards only use 9 bits of it.
+     * */
+    private int marks[] = new int[CandidateMasks.SIZE * CandidateMasks.SIZE];
+    /**
+     * While enabled values entered by the player toggle pencil marks instead of filling tiles
+     * */
+    private boolean pencilMode;
+    public boolean isPencilMode(){
+        return pencilMode;
+    }
+    public void setPencilMode(boolean enabled){
+        pencilMode = enabled;
+    }
+    /**
+     * While enabled any value can be entered, the tiles that clash with a peer are tracked
+     * instead of the move being refused
+     * */
+    private boolean allowConflicts;
+    public boolean isAllowConflicts(){
+        return allowConflicts;
+    }
+    public void setAllowConflicts(boolean enabled){
+        allowConflicts = enabled;
+    }
+    /**
+     * Tiles holding the same value as a peer, updated by every move from the unit counts
+     * */
+    private final BitSet conflicts = new BitSet();
+
+    /**
+     * Moves and mark changes of the current game for undo and redo
+     * */
+    private MoveHistory history = new MoveHistory();
+
+    /**
+     * When enabled a move removes its value from the pencil marks of its peers
+     * */
+    private boolean autoPrune;
+    public boolean isAutoPrune(){
+        return autoPrune;
+    }
+    public void setAutoPrune(boolean enabled){
+        autoPrune = enabled;
+    }
+
+    /**
+     * Row, column and box masks of used tiles
+     * */
+    private CandidateMasks used = new CandidateMasks();
+    /**
+     * When enabled every incremental update is checked against a full recompute
+     * */
+    private boolean consistencyCheck;
+    public void setConsistencyCheck(boolean enabled){
+        consistencyCheck = enabled;
+    }
+
+    private final Generator generator;
+    /**
+     * Generator of the other box sizes, replaced when the box size changes
+     * */
+    private Generator sizedGenerator;
+    /**
+     * Optional pool of pre-generated puzzles, new games fall back to the generator when empty
+     * */
+    private PuzzlePool pool;
+    public void setPuzzlePool(PuzzlePool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Timing of moves and rebuilds, nothing is measured while disabled
+     * */
+    private Metrics metrics = new Metrics();
+    public Metrics getMetrics(){
+        return metrics;
+    }
+    public void setMetrics(Metrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Told about every move accepted by setTileIfValid and every change of the pencil marks,
+     * e.g. to save the game
+     * */
+    public interface OnMoveListener {
+        void onMove(int x, int y, int value);
+        void onMarks(int x, int y, int marks);
+    }
+    private OnMoveListener moveListener;
+    public void setOnMoveListener(OnMoveListener listener){
+        this.moveListener = listener;
+    }
+
+    public GameViewModel(){
+        this(new Generator());
+    }
+
+    /**
+     * @param generator source of new puzzles, seed it to reproduce a game
+     */
+    public GameViewModel(Generator generator){
+        this.generator = generator;
+    }
+
+    /**
+     * Given a difficulty level, come up with a new puzzle of the new box size
+     * @param diff easy, normal & hard
+     * @param previousPuzzle will use previous puzzle to set current, a new easy puzzle is
+     *                       generated when there is none. Always a 9x9 board.
+     */
+    public void setPuzzle(int diff, String previousPuzzle) {
+        switch (diff) {
+            case DIFFICULTY_CONTINUE:
+                if (previousPuzzle != null) {
+                    resize(CandidateMasks.BOX_SIZE);
+                    this.puzzle = fromPuzzleString(previousPuzzle);
+                    // The string mixes clues and entries, leave every tile editable
+                    setGivens(null);
+                    break;
+                }
+                resize(newBoxSize);
+                this.puzzle = newPuzzle(DIFFICULTY_EASY);
+                setGivens(puzzle);
+                break;
+            default:
+                resize(newBoxSize);
+                this.puzzle = newPuzzle(diff);
+                setGivens(puzzle);
+                break;
+        }
+    }
+
+    /**
+     * True if setPuzzle would have to generate a board above 9x9, which takes up to seconds:
+     * nothing of the new box size and difficulty is pooled. Generate it off the UI thread
+     * instead and start with setGeneratedPuzzle.
+     * */
+    public boolean needsGenerating(int diff) {
+        return newBoxSize > CandidateMasks.BOX_SIZE
+                && (pool == null || pool.size(newBoxSize, diff) == 0);
+    }
+
+    /**
+     * Start a new game with a puzzle generated elsewhere, see needsGenerating
+     * */
+    public void setGeneratedPuzzle(int[] puzzle) {
+        resize(CandidateMasks.boxSizeOf(puzzle.length));
+        this.puzzle = puzzle;
+        setGivens(puzzle);
+    }
+
+    /**
+     * Switch the masks and tile indexing to the box size of the next puzzle
+     * */
+    private void resize(int boxSize) {
+        if (boxSize == used.getBoxSize())
+            return;
+        used = new CandidateMasks(boxSize);
+        this.boxSize = boxSize;
+        size = used.getSize();
+        solver = null;
+        grader = null;
+    }
+
+    /**
+     * Mark the filled tiles of a new puzzle as givens, none when null
+     * */
+    private void setGivens(int[] puz) {
+        givens.clear();
+        solution = null;
+        hintCached = false;
+        marks = new int[puzzle.length];
+        history.clear();
+        conflicts.clear();
+        if (puz == null)
+            return;
+        for (int i = 0; i < puz.length; i++) {
+            if (puz[i] != 0)
+                givens.set(i);
+        }
+    }
+
+    /**
+     * True for tiles of the original puzzle
+     * */
+    public boolean isGiven(int x, int y) {
+        return givens.get(y * size + x);
+    }
+
+    /**
+     * The original puzzle, i.e. only the givens
+     * */
+    public int[] getGivenPuzzle() {
+        int puz[] = new int[puzzle.length];
+        for (int i = givens.nextSetBit(0); i >= 0; i = givens.nextSetBit(i + 1)) {
+            puz[i] = puzzle[i];
+        }
+        return puz;
+    }
+
+    /**
+     * Solution of the original puzzle, computed once per puzzle
+     * @return null when the givens have no solution, or there are none
+     */
+    public int[] getSolution() {
+        if (solution == null && !givens.isEmpty()) {
+            if (solver == null)
+                solver = new DancingLinksSolver(boxSize);
+            solution = solver.solve(getGivenPuzzle());
+        }
+        return solution;
+    }
+
+    /**
+     * First entry that differs from the solution of the givens
+     * @return its index y * size + x, -1 if there is none or the givens have no solution
+     */
+    public int findMistake() {
+        int sol[] = getSolution();
+        if (sol == null)
+            return -1;
+        for (int i = 0; i < puzzle.length; i++) {
+            if (puzzle[i] != 0 && puzzle[i] != sol[i])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Simplest logical step from the current board, repeated calls return the cached hint until a
+     * tile changes
+     * @return null when the board is full, has conflicts or a mistake, see findMistake, or needs
+     * more than the known techniques, see Grader.hint
+     */
+    public Grader.Hint getHint() {
+        if (!conflicts.isEmpty())
+            return null;
+        if (!hintCached) {
+            if (grader == null)
+                grader = new Grader(boxSize);
+            // Steps taken from a wrong entry could lead anywhere
+            hint = findMistake() < 0 ? grader.hint(puzzle, used) : null;
+            hintCached = true;
+        }
+        return hint;
+    }
+
+    /**
+     * Same as setPuzzle(int, String) for a game restored from the binary save format
+     * @param previous continued when diff is DIFFICULTY_CONTINUE, may be null
+     */
+    public void setSavedPuzzle(int diff, SaveFormat.Snapshot previous) {
+        if (diff == DIFFICULTY_CONTINUE && previous != null) {
+            resize(CandidateMasks.boxSizeOf(previous.getTiles().length));
+            this.puzzle = previous.getTiles().clone();
+            setGivens(null);
+            if (previous.getGivens() != null)
+                givens.or(previous.getGivens());
+            if (previous.getMarks() != null)
+                marks = previous.getMarks().clone();
+            if (previous.getHistory() != null)
+                history = previous.getHistory().copy();
+            return;
+        }
+        setPuzzle(diff, null);
+    }
+
+    /**
+     * Copy of the board for saving, safe to hand to another thread. Runs after every move, so it
+     * only copies the tiles and marks; the history is shared, see MoveHistory.snapshot.
+     * */
+    public SaveFormat.Snapshot toSnapshot() {
+        return new SaveFormat.Snapshot(puzzle.clone(), (BitSet) givens.clone(),
+                hasMarks() ? marks.clone() : null, history.size() > 0 ? history.snapshot() : null);
+    }
+
+    private int[] newPuzzle(int diff) {
+        int puz[] = pool != null ? pool.take(boxSize, diff) : null;
+        if (puz != null)
+            return puz;
+        if (boxSize == generator.getBoxSize())
+            return generator.generate(diff);
+        if (sizedGenerator == null || sizedGenerator.getBoxSize() != boxSize)
+            sizedGenerator = new Generator(new Random(), boxSize);
+        return sizedGenerator.generate(diff);
+    }
+
+    /**
+     * True if any tile has pencil marks, saves without them leave the marks out
+     * */
+    private boolean hasMarks() {
+        for (int m : marks) {
+            if (m != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Pencil marks of the tile, bit (value - 1) set per noted value
+     * */
+    public int getMarks(int x, int y) {
+        return marks[y * size + x];
+    }
+
+    /**
+     * Flip one pencil mark of an empty tile, 0 clears all of them. Givens, filled tiles and
+     * values already used by a peer are refused.
+     * */
+    public boolean toggleMark(int x, int y, int value) {
+        if (value < 0 || value > size || isGiven(x, y) || getTile(x, y) != 0
+                || (getUsedMask(x, y) & CandidateMasks.bit(value)) != 0)
+            return false;
+        int i = y * size + x;
+        if (value != 0) {
+            marks[i] ^= CandidateMasks.bit(value);
+            history.add(MoveHistory.mark(i, value));
+        } else {
+            // One record per cleared mark, linked so that a single undo brings them all back
+            int link = 0;
+            for (int m = marks[i]; m != 0; m &= m - 1) {
+                history.add(MoveHistory.mark(i, Integer.numberOfTrailingZeros(m) + 1) | link);
+                link = MoveHistory.LINKED;
+            }
+            marks[i] = 0;
+        }
+        if (moveListener != null)
+            moveListener.onMarks(x, y, marks[i]);
+        return true;
+    }
+
+    /**
+     * Remove the value from the pencil marks of every peer of the tile, linked to the move in the
+     * history
+     * */
+    private void pruneMarks(int x, int y, int value) {
+        final int boxX = x - x % boxSize;
+        final int boxY = y - y % boxSize;
+        for (int k = 0; k < size; k++) {
+            pruneMark(y * size + k, value);
+            pruneMark(k * size + x, value);
+            pruneMark((boxY + k / boxSize) * size + boxX + k % boxSize, value);
+        }
+    }
+
+    private void pruneMark(int cell, int value) {
+        int b = CandidateMasks.bit(value);
+        if ((marks[cell] & b) != 0) {
+            marks[cell] &= ~b;
+            history.add(MoveHistory.mark(cell, value) | MoveHistory.LINKED);
+        }
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Take back the last action, a move together with the marks it pruned or a change of marks
+     * @return false if there is nothing to undo
+     */
+    public boolean undo() {
+        if (!history.canUndo())
+            return false;
+        int record;
+        do {
+            record = history.undo();
+            replay(record, true);
+        } while (MoveHistory.isLinked(record));
+        return true;
+    }
+
+    /**
+     * Apply the last action taken back by undo again
+     * @return false if there is nothing to redo
+     */
+    public boolean redo() {
+        if (!history.canRedo())
+            return false;
+        do {
+            replay(history.redo(), false);
+        } while (history.isNextLinked());
+        return true;
+    }
+
+    /**
+     * Apply a history record backwards or forwards. Tiles go through the same O(1) mask update as
+     * a move, the masks are never rebuilt.
+     */
+    private void replay(int record, boolean backwards) {
+        final int cell = MoveHistory.getCell(record);
+        final int x = cell % size;
+        final int y = cell / size;
+        if (MoveHistory.isMark(record)) {
+            marks[cell] ^= CandidateMasks.bit(MoveHistory.getPrevious(record));
+            if (moveListener != null)
+                moveListener.onMarks(x, y, marks[cell]);
+            return;
+        }
+        int from = backwards ? MoveHistory.getValue(record) : MoveHistory.getPrevious(record);
+        int to = backwards ? MoveHistory.getPrevious(record) : MoveHistory.getValue(record);
+        setTile(x, y, to);
+        // The record may come from a time conflicts were allowed, so it can restore a clash
+        updateUsedTiles(x, y, from, to, true);
+        if (moveListener != null)
+            moveListener.onMove(x, y, to);
+    }
+
+    /**
+     * Convert a puzzle string into an array
+     * */
+    protected int[] fromPuzzleString(String string) {
+        int[] puz = new int[string.length()];
+        for (int i = 0; i < puz.length; i++) {
+            puz[i] = string.charAt(i) - '0'; // integer parsing
+        }
+        return puz;
+    }
+
+    /**
+     * Recompute the used tiles masks for the whole puzzle
+     * */
+    public void calculateUsedTiles() {
+        hintCached = false;
+        if (!metrics.isEnabled()) {
+            used.rebuild(puzzle);
+        } else {
+            long start = System.nanoTime();
+            used.rebuild(puzzle);
+            metrics.getRebuildTimes().record(System.nanoTime() - start);
+        }
+        findConflicts();
+    }
+
+    /**
+     * Check every tile for conflicts, only needed when the whole board changed
+     * */
+    private void findConflicts() {
+        conflicts.clear();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (used.isConflict(x, y, getTile(x, y)))
+                    conflicts.set(y * size + x);
+            }
+        }
+    }
+
+    /**
+     * Recheck the row, column and box of a changed tile, no other tile can have gained or lost
+     * a conflict
+     * */
+    private void updateConflicts(int x, int y) {
+        final int boxX = x - x % boxSize;
+        final int boxY = y - y % boxSize;
+        for (int k = 0; k < size; k++) {
+            updateConflict(k, y);
+            updateConflict(x, k);
+            updateConflict(boxX + k % boxSize, boxY + k / boxSize);
+        }
+    }
+
+    private void updateConflict(int x, int y) {
+        conflicts.set(y * size + x, used.isConflict(x, y, getTile(x, y)));
+    }
+
+    /**
+     * True if the tile holds the same value as one of its peers
+     * */
+    public boolean isConflict(int x, int y) {
+        return conflicts.get(y * size + x);
+    }
+
+    /**
+     * Index of the first conflicting tile from the given one on, y * size + x, or -1 if there is
+     * none. Walks the conflict set only, not the board.
+     * */
+    public int nextConflict(int cell) {
+        return conflicts.nextSetBit(cell);
+    }
+
+    /**
+     * Update the used tiles masks after a single tile changed from previous to value
+     * */
+    public void updateUsedTiles(int x, int y, int previous, int value) {
+        updateUsedTiles(x, y, previous, value, false);
+    }
+
+    /**
+     * @param replayed true for undo and redo, which skip the validity check of a move
+     */
+    private void updateUsedTiles(int x, int y, int previous, int value, boolean replayed) {
+        used.update(x, y, previous, value);
+        // Valid moves cannot add conflicts, only existing ones need to be followed
+        if (replayed || allowConflicts || !conflicts.isEmpty())
+            updateConflicts(x, y);
+        if (consistencyCheck && !used.isConsistent(puzzle))
+            throw new IllegalStateException("Used tiles out of sync after setting (" + x + ", "
+                    + y + ") from " + previous + " to " + value);
+    }
+
+    /**
+     * Convert an array into a puzzle string
+     * */
+    public String toPuzzleString(int[] puz) {
+        StringBuilder buf = new StringBuilder();
+        for (int element : puz) {
+            buf.append(element);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Return the tile at the given coordinates
+     * */
+    public int getTile(int x, int y) {
+        return puzzle[y * size + x];
+    }
+
+    /**
+     * Change the tile only if it's a valid move, givens can never be changed and values above
+     * the board size are refused. Values used by a peer are accepted while conflicts are allowed.
+     * */
+    public boolean setTileIfValid(int x, int y, int value) {
+        boolean applied;
+        if (!metrics.isEnabled()) {
+            applied = applyIfValid(x, y, value);
+        } else {
+            long start = System.nanoTime();
+            applied = applyIfValid(x, y, value);
+            metrics.getMoveTimes().record(System.nanoTime() - start);
+        }
+        if (applied && moveListener != null)
+            moveListener.onMove(x, y, value);
+        return applied;
+    }
+
+    private boolean applyIfValid(int x, int y, int value) {
+        if (value < 0 || value > size || !allowConflicts
+                && (getUsedMask(x, y) & CandidateMasks.bit(value)) != 0 || isGiven(x, y))
+            return false;
+        int previous = getTile(x, y);
+        setTile(x, y, value);
+        updateUsedTiles(x, y, previous, value);
+        // An unchanged tile has no record for the pruned marks to link to
+        if (previous == value)
+            return true;
+        history.add(MoveHistory.tile(y * size + x, previous, value));
+        if (autoPrune && value != 0)
+            pruneMarks(x, y, value);
+        return true;
+    }
+
+    /**
+     * Return cached used tiles visible from the given coords
+     * */
+    public int[] getUsedTiles(int x, int y) {
+        return CandidateMasks.toValues(getUsedMask(x, y));
+    }
+
+    /**
+     * Mask with every value of the current board set, e.g. when no move is left
+     * */
+    public int getAllMask() {
+        return used.getAll();
+    }
+
+    /**
+     * Return the mask of used tiles visible from the given coords, bit (value - 1) set per value
+     * */
+    public int getUsedMask(int x, int y) {
+        return used.getUsed(x, y, getTile(x, y));
+    }
+
+    /**
+     * Change the tile at the given coordinates
+     * */
+    public void setTile(int x, int y, int value) {
+        puzzle[y * size + x] = value;
+        hintCached = false;
+    }
+
+    /**
+     * Tile strings by value up to 25x25, shared so that drawing a frame does not build strings
+     * */
+    private static final String TILE_STRINGS[] = new String[CandidateMasks.sizeOf(
+            CandidateMasks.MAX_BOX_SIZE) + 1];
+    static {
+        TILE_STRINGS[0] = "";
+        for (int i = 1; i < TILE_STRINGS.length; i++) {
+            TILE_STRINGS[i] = String.valueOf(i);
+        }
+    }
+
+    /**
+     * Return a string for the tile at the given coordinates
+     * */
+    public String getTileString(int x, int y) {
+        return TILE_STRINGS[getTile(x, y)];
+    }
+}
@@ -0,0 +1,125 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class AutoSaverTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Counts writes and remembers the thread doing them
+     */
+    static class CountingSaver extends AutoSaver {
+        volatile int writes;
+        volatile Thread writer;
+
+        CountingSaver(File file, ScheduledThreadPoolExecutor executor, long delayMs) {
+            super(file, executor, delayMs);
+        }
+
+        @Override
+        protected void write(SaveFormat.Snapshot snapshot) throws IOException {
+            writes++;
+            writer = Thread.currentThread();
+            super.write(snapshot);
+        }
+    }
+
+    @Before
+    public void setup() {
+        file = new File(folder.getRoot(), "puzzle.sav");
+        executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static SaveFormat.Snapshot board(int first) {
+        int tiles[] = new int[81];
+        tiles[0] = first;
+        return new SaveFormat.Snapshot(tiles, null, null);
+    }
+
+    @Test
+    public void coalescesMoves() throws Exception {
+        CountingSaver saver = new CountingSaver(file, executor, 60000);
+        for (int value = 1; value <= 9; value++) {
+            saver.save(board(value));
+        }
+        assertFalse(file.exists());
+        saver.flush().get();
+        assertEquals(1, saver.writes);
+        assertEquals(9, SaveFormat.read(file).getTiles()[0]);
+        assertTrue(saver.writer != Thread.currentThread());
+    }
+
+    @Test
+    public void writesAfterDelay() throws Exception {
+        CountingSaver saver = new CountingSaver(file, executor, 10);
+        saver.save(board(4));
+        executor.awaitTermination(200, TimeUnit.MILLISECONDS);
+        saver.flush().get();
+        assertEquals(1, saver.writes);
+        assertArrayEquals(board(4).getTiles(), SaveFormat.read(file).getTiles());
+    }
+
+    @Test
+    public void latestIsKnownBeforeItIsWritten() {
+        CountingSaver saver = new CountingSaver(file, executor, 60000);
+        assertNull(saver.getLatest());
+        SaveFormat.Snapshot snapshot = board(3);
+        saver.save(snapshot);
+        assertFalse(file.exists());
+        assertTrue(snapshot == saver.getLatest());
+    }
+
+    @Test
+    public void flushWithoutMovesDoesNotWrite() throws Exception {
+        CountingSaver saver = new CountingSaver(file, executor, 10);
+        saver.flush().get();
+        assertEquals(0, saver.writes);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void shutdownFlushes() throws Exception {
+        CountingSaver saver = new CountingSaver(file, executor, 60000);
+        saver.save(board(2));
+        saver.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, SaveFormat.read(file).getTiles()[0]);
+    }
+
+    @Test
+    public void failedWriteIsReported() throws Exception {
+        AutoSaver saver = new AutoSaver(new File(folder.getRoot(), "missing/puzzle.sav"), executor, 10);
+        saver.save(board(1));
+        saver.flush().get();
+        assertNotNull(saver.getLastError());
+        saver = new AutoSaver(file, executor, 10);
+        saver.save(board(1));
+        saver.flush().get();
+        assertNull(saver.getLastError());
+    }
+}
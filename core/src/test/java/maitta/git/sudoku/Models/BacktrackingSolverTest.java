@@ -0,0 +1,8 @@
+package maitta.git.sudoku.Models;
+
+public class BacktrackingSolverTest extends SolverTest {
+    @Override
+    protected Solver createSolver(int boxSize) {
+        return new BacktrackingSolver(boxSize);
+    }
+}
@@ -0,0 +1,169 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CandidateMasksTest {
+    private CandidateMasks masks;
+    private int[] puzzle;
+
+    private final String easyPuzzle = "000260701680070090190004500"
+            + "820100040004602900050003028" + "009300074040050036703018000";
+
+    @Before
+    public void setup() {
+        masks = new CandidateMasks();
+        puzzle = new int[easyPuzzle.length()];
+        for (int i = 0; i < puzzle.length; i++) {
+            puzzle[i] = easyPuzzle.charAt(i) - '0';
+        }
+    }
+
+    @Test
+    public void bit() {
+        assertEquals(0, CandidateMasks.bit(0));
+        assertEquals(1, CandidateMasks.bit(1));
+        assertEquals(256, CandidateMasks.bit(9));
+    }
+
+    @Test
+    public void box() {
+        assertEquals(0, CandidateMasks.box(2, 2));
+        assertEquals(4, CandidateMasks.box(4, 3));
+        assertEquals(8, CandidateMasks.box(8, 8));
+    }
+
+    @Test
+    public void emptyBoardHasNoUsedTiles() {
+        masks.rebuild(new int[81]);
+        for (int x = 0; x < 9; x++) {
+            for (int y = 0; y < 9; y++) {
+                assertEquals(0, masks.getUsed(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void usedTilesMatchScanOfPeers() {
+        masks.rebuild(puzzle);
+        for (int x = 0; x < 9; x++) {
+            for (int y = 0; y < 9; y++) {
+                int value = puzzle[y * 9 + x];
+                assertEquals(scanPeers(x, y), masks.getUsed(x, y, value));
+            }
+        }
+    }
+
+    @Test
+    public void updateMatchesRebuild() {
+        masks.rebuild(puzzle);
+        // Set, overwrite and clear the same empty tile
+        int[] values = {4, 3, 0};
+        int previous = 0;
+        for (int value : values) {
+            puzzle[0] = value;
+            masks.update(0, 0, previous, value);
+            previous = value;
+            assertTrue(masks.isConsistent(puzzle));
+        }
+    }
+
+    @Test
+    public void duplicateKeepsValueUsed() {
+        masks.rebuild(puzzle);
+        // 2 is already at (3, 0), a second one clashes
+        puzzle[0] = 2;
+        masks.update(0, 0, 0, 2);
+        assertTrue(masks.isConflict(0, 0, 2));
+        assertTrue(masks.isConflict(3, 0, 2));
+        assertFalse(masks.isConflict(4, 0, 6));
+        // Removing one of them leaves the other in the mask
+        puzzle[0] = 0;
+        masks.update(0, 0, 2, 0);
+        assertEquals(CandidateMasks.bit(2), masks.getUsed(1, 0, 0) & CandidateMasks.bit(2));
+        assertFalse(masks.isConflict(3, 0, 2));
+        assertTrue(masks.isConsistent(puzzle));
+    }
+
+    @Test
+    public void isConsistentDetectsStaleMasks() {
+        masks.rebuild(puzzle);
+        puzzle[0] = 4;
+        assertFalse(masks.isConsistent(puzzle));
+    }
+
+    @Test
+    public void toValues() {
+        assertArrayEquals(new int[0], CandidateMasks.toValues(0));
+        assertArrayEquals(new int[]{1, 3, 9}, CandidateMasks.toValues(0x105));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9},
+                CandidateMasks.toValues(CandidateMasks.ALL));
+    }
+
+    @Test
+    public void boxOfLargerBoards() {
+        assertEquals(0, CandidateMasks.box(3, 3, 4));
+        assertEquals(5, CandidateMasks.box(4, 4, 4));
+        assertEquals(24, CandidateMasks.box(24, 24, 5));
+    }
+
+    @Test
+    public void boxSizeOf() {
+        assertEquals(2, CandidateMasks.boxSizeOf(16));
+        assertEquals(3, CandidateMasks.boxSizeOf(81));
+        assertEquals(5, CandidateMasks.boxSizeOf(625));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boxSizeOfRejectsNonSquareBoards() {
+        CandidateMasks.boxSizeOf(80);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBoxSizeAboveMax() {
+        new CandidateMasks(CandidateMasks.MAX_BOX_SIZE + 1);
+    }
+
+    @Test
+    public void twentyFiveByTwentyFive() {
+        CandidateMasks large = new CandidateMasks(5);
+        assertEquals(25, large.getSize());
+        assertEquals(0x1FFFFFF, large.getAll());
+        int[] grid = SolverTest.patternGrid(5);
+        large.rebuild(grid);
+        // Every value is used by the peers of a full grid except the tile's own
+        assertEquals(large.getAll() & ~CandidateMasks.bit(grid[0]), large.getUsed(0, 0, grid[0]));
+        int previous = grid[624];
+        grid[624] = 0;
+        large.update(24, 24, previous, 0);
+        assertTrue(large.isConsistent(grid));
+        assertEquals(large.getAll(), large.getUsed(24, 24, 0) | CandidateMasks.bit(previous));
+    }
+
+    /**
+     * Reference implementation: scan row, column and box skipping the tile itself
+     * */
+    private int scanPeers(int x, int y) {
+        int mask = 0;
+        for (int i = 0; i < 9; i++) {
+            if (i != x)
+                mask |= CandidateMasks.bit(puzzle[y * 9 + i]);
+            if (i != y)
+                mask |= CandidateMasks.bit(puzzle[i * 9 + x]);
+        }
+        int startx = (x / 3) * 3;
+        int starty = (y / 3) * 3;
+        for (int i = startx; i < startx + 3; i++) {
+            for (int j = starty; j < starty + 3; j++) {
+                if (i != x || j != y)
+                    mask |= CandidateMasks.bit(puzzle[j * 9 + i]);
+            }
+        }
+        return mask;
+    }
+}
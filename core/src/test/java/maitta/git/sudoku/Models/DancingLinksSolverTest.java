@@ -0,0 +1,33 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class DancingLinksSolverTest extends SolverTest {
+    // Built against brute force: the first row of the solution is 987654321
+    static final String antiBruteForcePuzzle = "000000000000003085001020000"
+            + "000507000004000100090000000" + "500000073002010000000040009";
+
+    @Override
+    protected Solver createSolver(int boxSize) {
+        return new DancingLinksSolver(boxSize);
+    }
+
+    @Test
+    public void solvesAntiBruteForcePuzzle() {
+        int[] puz = parse(antiBruteForcePuzzle);
+        assertSolves(puz, solver.solve(puz));
+    }
+
+    @Test
+    public void matchesBacktrackingSolver() {
+        Solver backtracking = new BacktrackingSolver();
+        for (String puzzle : new String[]{ easyPuzzle, mediumPuzzle, hardPuzzle, inkalaPuzzle,
+                antiBruteForcePuzzle }) {
+            int[] puz = parse(puzzle);
+            // Both solvers must agree on puzzles with a single solution
+            assertArrayEquals(backtracking.solve(puz), solver.solve(puz));
+        }
+    }
+}
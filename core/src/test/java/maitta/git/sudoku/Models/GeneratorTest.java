@@ -0,0 +1,133 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class GeneratorTest {
+    private Generator generator;
+    private Solver solver;
+
+    @Before
+    public void setup() {
+        generator = new Generator(1234);
+        solver = new BacktrackingSolver();
+    }
+
+    private static int clues(int[] puzzle) {
+        int n = 0;
+        for (int t : puzzle) {
+            if (t != 0)
+                n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void solutionIsFullValidGrid() {
+        int[] solution = generator.generateSolution();
+        assertEquals(81, clues(solution));
+        SolverTest.assertSolves(solution, solution);
+    }
+
+    @Test
+    public void puzzlesHaveUniqueSolution() {
+        for (int diff : new int[]{ Difficulty.EASY, Difficulty.MEDIUM, Difficulty.HARD }) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals(1, solver.countSolutions(generator.generate(diff), 2));
+            }
+        }
+    }
+
+    @Test
+    public void cluesFollowDifficulty() {
+        assertEquals(Generator.EASY_CLUES, clues(generator.generate(Difficulty.EASY)));
+        assertTrue(clues(generator.generate(Difficulty.MEDIUM)) >= Generator.MEDIUM_CLUES);
+        assertTrue(clues(generator.generate(Difficulty.HARD)) < Generator.EASY_CLUES);
+    }
+
+    @Test
+    public void gradeMatchesDifficulty() {
+        Grader grader = new Grader();
+        for (int diff : new int[]{ Difficulty.EASY, Difficulty.MEDIUM, Difficulty.HARD }) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals(diff, grader.grade(generator.generate(diff)).getDifficulty());
+            }
+        }
+    }
+
+    @Test
+    public void tryGenerateDropsOtherGrades() {
+        Grader grader = new Grader();
+        int found = 0;
+        for (int i = 0; i < 40; i++) {
+            int[] puzzle = generator.tryGenerate(Difficulty.MEDIUM);
+            if (puzzle == null)
+                continue;
+            assertEquals(Difficulty.MEDIUM, grader.grade(puzzle).getDifficulty());
+            found++;
+        }
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void hardPuzzleIsMinimal() {
+        int[] puzzle = generator.generate(Difficulty.HARD);
+        // Removing any further clue breaks uniqueness
+        for (int i = 0; i < 81; i++) {
+            if (puzzle[i] == 0)
+                continue;
+            int value = puzzle[i];
+            puzzle[i] = 0;
+            assertEquals(2, solver.countSolutions(puzzle, 2));
+            puzzle[i] = value;
+        }
+    }
+
+    @Test
+    public void sameSeedReproducesPuzzle() {
+        int[] first = generator.generate(Difficulty.MEDIUM, 99);
+        generator.generate(Difficulty.HARD);
+        assertArrayEquals(first, generator.generate(Difficulty.MEDIUM, 99));
+        assertArrayEquals(first, new Generator(99).generate(Difficulty.MEDIUM));
+    }
+
+    @Test
+    public void differentSeedsGiveDifferentPuzzles() {
+        assertFalse(Arrays.equals(generator.generate(Difficulty.EASY, 1),
+                generator.generate(Difficulty.EASY, 2)));
+    }
+
+    @Test
+    public void unknownDifficultyIsEasy() {
+        assertArrayEquals(generator.generate(Difficulty.EASY, 7), generator.generate(42, 7));
+    }
+
+    @Test
+    public void generatesFourByFour() {
+        Generator small = new Generator(new Random(1234), 2);
+        int[] solution = small.generateSolution();
+        assertEquals(16, clues(solution));
+        SolverTest.assertSolves(solution, solution);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(1, new BacktrackingSolver(2).countSolutions(small.generate(Difficulty.HARD), 2));
+        }
+    }
+
+    @Test
+    public void generatesSixteenBySixteen() {
+        Generator large = new Generator(new Random(1234), 4);
+        int[] puzzle = large.generate(Difficulty.EASY);
+        assertEquals(256, puzzle.length);
+        // Same share of clues as a 9x9 board
+        assertEquals(Generator.EASY_CLUES * 256 / 81, clues(puzzle));
+        assertEquals(1, new DancingLinksSolver(4).countSolutions(puzzle, 2));
+    }
+}
@@ -0,0 +1,217 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static maitta.git.sudoku.Models.SolverTest.parse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraderTest {
+    private Grader grader;
+
+    // Puzzles whose hardest step is the named technique
+    static final String pointingPuzzle = "000300040000804000001070039"
+            + "905000000700000062008502000" + "074000900009740000050000200";
+    static final String boxLinePuzzle = "031070040700380020600004000"
+            + "920000000305400000000000670" + "000500200010000083000760000";
+    static final String nakedPairPuzzle = "000136008005004000000080090"
+            + "004000200080400106000002000" + "007000050400300807600900001";
+    static final String xWingPuzzle = "004200300010906007003078600"
+            + "000080000007000000320000090" + "002000760750020040000043000";
+
+    @Before
+    public void setup() {
+        grader = new Grader();
+    }
+
+    private void assertHardest(Technique technique, String puzzle) {
+        Grader.Grade grade = grader.grade(parse(puzzle));
+        assertEquals(technique, grade.getHardest());
+        assertEquals(technique.getDifficulty(), grade.getDifficulty());
+        assertTrue(grade.isSolved());
+    }
+
+    @Test
+    public void fullGridNeedsNothing() {
+        Grader.Grade grade = grader.grade(parse(SolverTest.easySolution));
+        assertEquals(Technique.NAKED_SINGLE, grade.getHardest());
+        assertEquals(0, grade.getScore());
+        assertTrue(grade.isSolved());
+    }
+
+    @Test
+    public void easyPuzzleNeedsSinglesOnly() {
+        Grader.Grade grade = grader.grade(parse(SolverTest.easyPuzzle));
+        assertEquals(Difficulty.EASY, grade.getDifficulty());
+        assertTrue(grade.isSolved());
+        // Every empty tile takes at least one step
+        assertTrue(grade.getScore() >= 81 - 36);
+    }
+
+    @Test
+    public void detectsPointing() {
+        assertHardest(Technique.POINTING, pointingPuzzle);
+    }
+
+    @Test
+    public void detectsBoxLine() {
+        assertHardest(Technique.BOX_LINE, boxLinePuzzle);
+    }
+
+    @Test
+    public void detectsNakedPair() {
+        assertHardest(Technique.NAKED_PAIR, nakedPairPuzzle);
+    }
+
+    @Test
+    public void detectsXWing() {
+        assertHardest(Technique.X_WING, xWingPuzzle);
+        assertEquals(Difficulty.HARD, Technique.X_WING.getDifficulty());
+    }
+
+    @Test
+    public void hardestPuzzleNeedsGuessing() {
+        Grader.Grade grade = grader.grade(parse(SolverTest.inkalaPuzzle));
+        assertEquals(Technique.GUESS, grade.getHardest());
+        assertEquals(Difficulty.HARD, grade.getDifficulty());
+        assertFalse(grade.isSolved());
+    }
+
+    @Test
+    public void clashingGivensAreNotSolved() {
+        int[] puz = parse(SolverTest.easyPuzzle);
+        puz[0] = 2;
+        assertFalse(grader.grade(puz).isSolved());
+    }
+
+    @Test
+    public void harderTechniquesScoreHigher() {
+        int easy = grader.grade(parse(SolverTest.easyPuzzle)).getScore();
+        int medium = grader.grade(parse(pointingPuzzle)).getScore();
+        assertTrue(medium > easy);
+        assertEquals(Difficulty.MEDIUM, Technique.NAKED_PAIR.getDifficulty());
+    }
+
+    @Test
+    public void graderIsReusable() {
+        Grader.Grade first = grader.grade(parse(xWingPuzzle));
+        grader.grade(parse(SolverTest.inkalaPuzzle));
+        Grader.Grade second = grader.grade(parse(xWingPuzzle));
+        assertEquals(first.getScore(), second.getScore());
+        assertEquals(first.getHardest(), second.getHardest());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrongSize() {
+        grader.grade(new int[80]);
+    }
+
+    @Test
+    public void gradesSixteenBySixteen() {
+        int[] puz = SolverTest.patternGrid(4);
+        // One hole per row is always a naked single
+        for (int y = 0; y < 16; y++) {
+            puz[y * 16 + y] = 0;
+        }
+        Grader.Grade grade = new Grader(4).grade(puz);
+        assertTrue(grade.isSolved());
+        assertEquals(Technique.NAKED_SINGLE, grade.getHardest());
+    }
+
+    /**
+     * Follow hints until the board is full, checking every one against the solution
+     * @return hardest technique the hints needed
+     */
+    private Technique followHints(String puzzle) {
+        int[] puz = parse(puzzle);
+        int[] solution = new DancingLinksSolver().solve(puz);
+        CandidateMasks used = new CandidateMasks();
+        Technique hardest = Technique.NAKED_SINGLE;
+        for (int empty = 0; empty < puz.length; empty++) {
+            used.rebuild(puz);
+            Grader.Hint hint = grader.hint(puz, used);
+            if (hint == null)
+                break;
+            assertEquals(0, puz[hint.getCell()]);
+            assertEquals(solution[hint.getCell()], hint.getValue());
+            for (int reason : hint.getReasons()) {
+                assertTrue(reason != hint.getCell());
+            }
+            if (hint.getTechnique().ordinal() > hardest.ordinal())
+                hardest = hint.getTechnique();
+            puz[hint.getCell()] = hint.getValue();
+        }
+        assertArrayEquals(solution, puz);
+        return hardest;
+    }
+
+    @Test
+    public void hintsSolvePuzzles() {
+        assertEquals(Difficulty.EASY, followHints(SolverTest.easyPuzzle).getDifficulty());
+        assertEquals(Technique.POINTING, followHints(pointingPuzzle));
+        assertEquals(Technique.BOX_LINE, followHints(boxLinePuzzle));
+        assertEquals(Technique.NAKED_PAIR, followHints(nakedPairPuzzle));
+        assertEquals(Technique.X_WING, followHints(xWingPuzzle));
+    }
+
+    @Test
+    public void nakedSingleReasonsCoverOtherValues() {
+        int[] puz = parse(SolverTest.easySolution);
+        puz[0] = 0;
+        CandidateMasks used = new CandidateMasks();
+        used.rebuild(puz);
+        Grader.Hint hint = grader.hint(puz, used);
+        assertEquals(Technique.NAKED_SINGLE, hint.getTechnique());
+        assertEquals(0, hint.getCell());
+        assertEquals(4, hint.getValue());
+        // One peer for each of the other 8 values
+        assertEquals(8, hint.getReasons().length);
+    }
+
+    @Test
+    public void nakedSingleReasonsSkipEmptyPeers() {
+        int[] puz = parse(SolverTest.easySolution);
+        for (int x = 1; x < 9; x++) {
+            puz[x] = 0;
+        }
+        CandidateMasks used = new CandidateMasks();
+        used.rebuild(puz);
+        Grader.Hint hint = grader.hint(puz, used);
+        assertEquals(Technique.NAKED_SINGLE, hint.getTechnique());
+        assertEquals(1, hint.getCell());
+        assertEquals(3, hint.getValue());
+        // The 4 on its left and the first tile down the column for every other value
+        assertArrayEquals(new int[]{ 0, 10, 19, 28, 37, 46, 55, 73 }, hint.getReasons());
+    }
+
+    @Test
+    public void hintReasonsOnlyKeepEliminationsItNeeds() {
+        int[] puz = parse(pointingPuzzle);
+        CandidateMasks used = new CandidateMasks();
+        Grader.Hint hint;
+        do {
+            used.rebuild(puz);
+            hint = grader.hint(puz, used);
+            puz[hint.getCell()] = hint.getValue();
+        } while (hint.getTechnique() == Technique.NAKED_SINGLE
+                || hint.getTechnique() == Technique.HIDDEN_SINGLE);
+        assertEquals(Technique.POINTING, hint.getTechnique());
+        assertEquals(23, hint.getCell());
+        assertEquals(6, hint.getValue());
+        assertArrayEquals(new int[]{ 12, 14, 20, 21, 22, 25, 26, 59, 68 }, hint.getReasons());
+    }
+
+    @Test
+    public void noHintWithoutTechnique() {
+        int[] puz = parse(SolverTest.inkalaPuzzle);
+        CandidateMasks used = new CandidateMasks();
+        used.rebuild(puz);
+        assertNull(grader.hint(puz, used));
+        used.rebuild(parse(SolverTest.easySolution));
+        assertNull(grader.hint(parse(SolverTest.easySolution), used));
+    }
+}
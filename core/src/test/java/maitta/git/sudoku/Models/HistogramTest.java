@@ -0,0 +1,90 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class HistogramTest {
+    private Histogram histogram;
+
+    @Before
+    public void setup() {
+        histogram = new Histogram();
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (long value = 0; value < 1 << 16; value++) {
+            int index = Histogram.indexOf(value);
+            assertTrue(value <= Histogram.highestOf(index));
+            if (index > 0)
+                assertTrue(value > Histogram.highestOf(index - 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestOf(Histogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void emptyHistogram() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        for (int value = 1; value <= 5; value++) {
+            histogram.record(value);
+        }
+        assertEquals(5, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(5, histogram.getMax());
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(5, histogram.getValueAtPercentile(100));
+        assertEquals(3, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        for (int value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p50 >= 50000 && p50 <= 50000 * 9 / 8);
+        assertTrue(p99 >= 99000 && p99 <= 100000);
+    }
+
+    @Test
+    public void negativeRecordedAsZero() {
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void reset() {
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        histogram.record(7);
+        assertEquals(7, histogram.getMin());
+    }
+
+    @Test
+    public void metricsDump() throws IOException {
+        Metrics metrics = new Metrics();
+        metrics.getMoveTimes().record(240);
+        StringBuilder out = new StringBuilder();
+        metrics.dump(out);
+        String lines[] = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("move ns n=1 p50=240 p90=240 p99=240 max=240", lines[1]);
+    }
+}
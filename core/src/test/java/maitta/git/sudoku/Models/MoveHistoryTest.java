@@ -0,0 +1,142 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MoveHistoryTest {
+    private MoveHistory history;
+
+    @Before
+    public void setup() {
+        history = new MoveHistory();
+    }
+
+    @Test
+    public void packsTileRecords() {
+        int record = MoveHistory.tile(624, 25, 17);
+        assertFalse(MoveHistory.isMark(record));
+        assertFalse(MoveHistory.isLinked(record));
+        assertEquals(624, MoveHistory.getCell(record));
+        assertEquals(25, MoveHistory.getPrevious(record));
+        assertEquals(17, MoveHistory.getValue(record));
+    }
+
+    @Test
+    public void packsMarkRecords() {
+        int record = MoveHistory.mark(80, 9) | MoveHistory.LINKED;
+        assertTrue(MoveHistory.isMark(record));
+        assertTrue(MoveHistory.isLinked(record));
+        assertEquals(80, MoveHistory.getCell(record));
+        assertEquals(9, MoveHistory.getPrevious(record));
+    }
+
+    @Test
+    public void undoThenRedo() {
+        history.add(1);
+        history.add(2);
+        assertEquals(2, history.undo());
+        assertTrue(history.canRedo());
+        assertEquals(2, history.redo());
+        assertFalse(history.canRedo());
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    public void addDropsRedo() {
+        history.add(1);
+        history.add(2);
+        history.undo();
+        history.add(3);
+        assertFalse(history.canRedo());
+        assertArrayEquals(new int[]{1, 3}, history.toArray());
+    }
+
+    @Test
+    public void growsWithoutLimit() {
+        for (int i = 0; i < 10000; i++) {
+            history.add(i);
+        }
+        for (int i = 9999; i >= 0; i--) {
+            assertEquals(i, history.undo());
+        }
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void copyKeepsPosition() {
+        history.add(1);
+        history.add(MoveHistory.LINKED | 2);
+        history.undo();
+        history.undo();
+        assertFalse(history.isNextLinked());
+        MoveHistory copy = history.copy();
+        history.clear();
+        assertEquals(0, copy.getPosition());
+        assertEquals(1, copy.redo());
+        assertTrue(copy.isNextLinked());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void undoWhenEmpty() {
+        history.undo();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPositionPastRecords() {
+        new MoveHistory(new int[2], 3);
+    }
+
+    @Test
+    public void dropsOldestActionsWhenFull() {
+        final int half = MoveHistory.MAX_RECORDS / 2;
+        for (int i = 0; i < MoveHistory.MAX_RECORDS; i++) {
+            int record = MoveHistory.tile(i % 81, 0, 1);
+            // The action in the middle is dropped whole
+            history.add(i == half ? record | MoveHistory.LINKED : record);
+        }
+        history.add(MoveHistory.tile(1, 0, 2));
+        assertEquals(half, history.size());
+        assertEquals(MoveHistory.tile(1, 0, 2), history.undo());
+        for (int i = 1; i < half; i++) {
+            history.undo();
+        }
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void snapshotKeepsItsRecords() {
+        history.add(1);
+        history.add(2);
+        MoveHistory snapshot = history.snapshot();
+        // Appending does not touch what the snapshot reads
+        history.add(3);
+        assertArrayEquals(new int[]{ 1, 2 }, snapshot.toArray());
+        // Neither does overwriting an undone record
+        history.undo();
+        history.undo();
+        history.add(4);
+        assertArrayEquals(new int[]{ 1, 2 }, snapshot.toArray());
+        assertEquals(2, snapshot.getPosition());
+        assertArrayEquals(new int[]{ 1, 4 }, history.toArray());
+    }
+
+    @Test
+    public void snapshotWritesDoNotReachHistory() {
+        history.add(1);
+        MoveHistory snapshot = history.snapshot();
+        snapshot.add(5);
+        history.add(2);
+        assertArrayEquals(new int[]{ 1, 5 }, snapshot.toArray());
+        assertArrayEquals(new int[]{ 1, 2 }, history.toArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyRecords() {
+        new MoveHistory(new int[MoveHistory.MAX_RECORDS + 1], 0);
+    }
+}
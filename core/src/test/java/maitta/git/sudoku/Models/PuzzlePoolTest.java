@@ -0,0 +1,136 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static maitta.git.sudoku.Models.PuzzlePool.CAPACITY;
+import static maitta.git.sudoku.Models.PuzzlePool.LOW_WATER_MARK;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class PuzzlePoolTest {
+    private PuzzlePool pool;
+    private CountingExecutor executor;
+
+    /**
+     * Runs refills inline so that the pool sizes are deterministic
+     * */
+    private static class CountingExecutor extends AbstractExecutorService {
+        int tasks;
+
+        @Override
+        public void execute(Runnable command) {
+            tasks++;
+            command.run();
+        }
+        @Override
+        public void shutdown() {}
+        @Override
+        public List<Runnable> shutdownNow() { return Collections.emptyList(); }
+        @Override
+        public boolean isShutdown() { return false; }
+        @Override
+        public boolean isTerminated() { return false; }
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    }
+
+    @Before
+    public void setup() {
+        executor = new CountingExecutor();
+        pool = new PuzzlePool(new Generator(5), executor);
+    }
+
+    @Test
+    public void startsEmptyAndPaused() {
+        assertNull(pool.take(Difficulty.EASY));
+        assertEquals(0, pool.size(Difficulty.EASY));
+        assertEquals(0, executor.tasks);
+    }
+
+    @Test
+    public void resumeFillsEveryDifficulty() {
+        pool.resume();
+        assertEquals(CAPACITY, pool.size(Difficulty.EASY));
+        assertEquals(CAPACITY, pool.size(Difficulty.MEDIUM));
+        assertEquals(CAPACITY, pool.size(Difficulty.HARD));
+    }
+
+    @Test
+    public void takeGivesUniquePuzzle() {
+        pool.resume();
+        int[] puzzle = pool.take(Difficulty.HARD);
+        assertNotNull(puzzle);
+        assertEquals(1, new BacktrackingSolver().countSolutions(puzzle, 2));
+    }
+
+    @Test
+    public void keepsOnlyPuzzlesOfTheirGrade() {
+        pool.resume();
+        Grader grader = new Grader();
+        for (int diff : new int[]{ Difficulty.EASY, Difficulty.MEDIUM, Difficulty.HARD }) {
+            for (int i = 0; i < CAPACITY; i++) {
+                assertEquals(diff, grader.grade(pool.take(diff)).getDifficulty());
+            }
+        }
+    }
+
+    @Test
+    public void refillsBelowLowWaterMark() {
+        pool.resume();
+        int tasks = executor.tasks;
+        while (pool.size(Difficulty.MEDIUM) > LOW_WATER_MARK) {
+            pool.take(Difficulty.MEDIUM);
+        }
+        assertEquals(tasks, executor.tasks);
+        pool.take(Difficulty.MEDIUM);
+        assertEquals(tasks + 1, executor.tasks);
+        assertEquals(CAPACITY, pool.size(Difficulty.MEDIUM));
+    }
+
+    @Test
+    public void noRefillWhilePaused() {
+        pool.resume();
+        pool.pause();
+        for (int i = 0; i < CAPACITY; i++) {
+            assertNotNull(pool.take(Difficulty.EASY));
+        }
+        assertNull(pool.take(Difficulty.EASY));
+        pool.resume();
+        assertEquals(CAPACITY, pool.size(Difficulty.EASY));
+    }
+
+    @Test
+    public void unknownDifficultyUsesEasyPool() {
+        pool.resume();
+        pool.pause();
+        pool.take(Difficulty.EASY);
+        assertEquals(CAPACITY - 1, pool.size(7));
+    }
+
+    @Test
+    public void otherBoxSizesFillOnceAskedFor() {
+        pool.resume();
+        assertEquals(0, pool.size(2, Difficulty.EASY));
+        assertNull(pool.take(2, Difficulty.EASY));
+        assertEquals(CAPACITY, pool.size(2, Difficulty.EASY));
+        assertEquals(16, pool.take(2, Difficulty.EASY).length);
+        // The default box size is untouched
+        assertEquals(CAPACITY, pool.size(Difficulty.EASY));
+    }
+
+    @Test
+    public void prepareFillsEveryDifficulty() {
+        pool.resume();
+        pool.prepare(2);
+        assertEquals(CAPACITY, pool.size(2, Difficulty.EASY));
+        assertEquals(CAPACITY, pool.size(2, Difficulty.MEDIUM));
+        assertEquals(CAPACITY, pool.size(2, Difficulty.HARD));
+    }
+}
@@ -0,0 +1,158 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+public class SaveFormatTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private int[] puzzle;
+    private BitSet givens;
+
+    private final String easyPuzzle = "000260701680070090190004500"
+            + "820100040004602900050003028" + "009300074040050036703018000";
+
+    @Before
+    public void setup() {
+        puzzle = new int[easyPuzzle.length()];
+        givens = new BitSet();
+        for (int i = 0; i < puzzle.length; i++) {
+            puzzle[i] = easyPuzzle.charAt(i) - '0';
+            if (puzzle[i] != 0)
+                givens.set(i);
+        }
+    }
+
+    private SaveFormat.Snapshot roundTrip(SaveFormat.Snapshot snapshot) throws IOException {
+        return SaveFormat.read(new ByteArrayInputStream(SaveFormat.toBytes(snapshot)));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        SaveFormat.Snapshot read = roundTrip(new SaveFormat.Snapshot(puzzle, givens, null));
+        assertArrayEquals(puzzle, read.getTiles());
+        assertEquals(givens, read.getGivens());
+        assertNull(read.getMarks());
+    }
+
+    @Test
+    public void fourBitsPerCell() {
+        // 5 header bytes, 41 bytes of tiles and an 11 byte givens bitmap
+        assertEquals(57, SaveFormat.toBytes(new SaveFormat.Snapshot(puzzle, givens, null)).length);
+    }
+
+    @Test
+    public void marksRoundTrip() throws IOException {
+        int marks[] = new int[puzzle.length];
+        for (int i = 0; i < marks.length; i++) {
+            marks[i] = (i * 37) & CandidateMasks.ALL;
+        }
+        SaveFormat.Snapshot read = roundTrip(new SaveFormat.Snapshot(puzzle, givens, marks));
+        assertArrayEquals(puzzle, read.getTiles());
+        assertEquals(givens, read.getGivens());
+        assertArrayEquals(marks, read.getMarks());
+    }
+
+    @Test
+    public void historyRoundTrip() throws IOException {
+        MoveHistory history = new MoveHistory();
+        for (int i = 0; i < 3000; i++) {
+            history.add(MoveHistory.tile(i % 81, i % 10, (i + 1) % 10));
+        }
+        history.add(MoveHistory.mark(3, 4) | MoveHistory.LINKED);
+        history.undo();
+        SaveFormat.Snapshot read = roundTrip(new SaveFormat.Snapshot(puzzle, givens, null, history));
+        assertArrayEquals(puzzle, read.getTiles());
+        assertNull(read.getMarks());
+        assertArrayEquals(history.toArray(), read.getHistory().toArray());
+        assertEquals(3000, read.getHistory().getPosition());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsHistoryOutsideBoard() throws IOException {
+        MoveHistory history = new MoveHistory();
+        history.add(MoveHistory.tile(81, 0, 1));
+        roundTrip(new SaveFormat.Snapshot(puzzle, givens, null, history));
+    }
+
+    @Test
+    public void readsVersionOne() throws IOException {
+        byte data[] = SaveFormat.toBytes(new SaveFormat.Snapshot(puzzle, givens, null));
+        data[2] = 1;
+        SaveFormat.Snapshot read = SaveFormat.read(new ByteArrayInputStream(data));
+        assertArrayEquals(puzzle, read.getTiles());
+        assertNull(read.getHistory());
+    }
+
+    @Test
+    public void fullBoardRoundTrip() throws IOException {
+        int solution[] = new BacktrackingSolver().solve(puzzle);
+        SaveFormat.Snapshot read = roundTrip(new SaveFormat.Snapshot(solution, givens, null));
+        assertArrayEquals(solution, read.getTiles());
+    }
+
+    @Test
+    public void bulkRecords() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Generator generator = new Generator(3);
+        int puzzles[][] = new int[5][];
+        for (int i = 0; i < puzzles.length; i++) {
+            puzzles[i] = generator.generateSolution();
+            SaveFormat.write(out, new SaveFormat.Snapshot(puzzles[i], null, null));
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (int[] expected : puzzles) {
+            assertArrayEquals(expected, SaveFormat.read(in).getTiles());
+        }
+        assertNull(SaveFormat.read(in));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws IOException {
+        SaveFormat.read(new ByteArrayInputStream(easyPuzzle.getBytes()));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNewerVersion() throws IOException {
+        byte data[] = SaveFormat.toBytes(new SaveFormat.Snapshot(puzzle, givens, null));
+        data[2] = (byte) (SaveFormat.VERSION + 1);
+        SaveFormat.read(new ByteArrayInputStream(data));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncated() throws IOException {
+        byte data[] = SaveFormat.toBytes(new SaveFormat.Snapshot(puzzle, givens, null));
+        SaveFormat.read(new ByteArrayInputStream(data, 0, data.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadBoard() {
+        new SaveFormat.Snapshot(new int[80], givens, null);
+    }
+
+    @Test
+    public void writeAtomicallyReplacesFile() throws IOException {
+        File file = new File(folder.getRoot(), "puzzle.sav");
+        SaveFormat.writeAtomically(file, new SaveFormat.Snapshot(new int[81], null, null));
+        SaveFormat.writeAtomically(file, new SaveFormat.Snapshot(puzzle, givens, null));
+        assertArrayEquals(puzzle, SaveFormat.read(file).getTiles());
+        assertFalse(new File(folder.getRoot(), "puzzle.sav.tmp").exists());
+        assertEquals(1, folder.getRoot().list().length);
+        assertTrue(file.length() > 0);
+    }
+}
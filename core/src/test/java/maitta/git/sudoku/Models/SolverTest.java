@@ -0,0 +1,219 @@
+package maitta.git.sudoku.Models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Behaviour shared by every Solver implementation
+ */
+public abstract class SolverTest {
+    protected Solver solver;
+
+    static final String easyPuzzle = "000260701680070090190004500"
+            + "820100040004602900050003028" + "009300074040050036703018000";
+    static final String mediumPuzzle = "020608000580009700000040000"
+            + "370000500600000004008000013" + "000020000009800036000306090";
+    static final String hardPuzzle = "000600400700003600000091080"
+            + "000000000050180003000306045" + "040200060903000000020000100";
+    // Published as one of the hardest puzzles for human solvers
+    static final String inkalaPuzzle = "800000000003600000070090200"
+            + "050007000000045700000100030" + "001000068008500010090000400";
+    static final String easySolution = "435269781682571493197834562"
+            + "826195347374682915951743628" + "519326874248957136763418259";
+
+    protected abstract Solver createSolver(int boxSize);
+
+    @Before
+    public void setup() {
+        solver = createSolver(CandidateMasks.BOX_SIZE);
+    }
+
+    static int[] parse(String string) {
+        int[] puz = new int[string.length()];
+        for (int i = 0; i < puz.length; i++) {
+            puz[i] = string.charAt(i) - '0';
+        }
+        return puz;
+    }
+
+    /**
+     * Check the solution is a full valid grid that keeps every given of the puzzle
+     * */
+    static void assertSolves(int[] puzzle, int[] solution) {
+        assertNotNull(solution);
+        assertEquals(puzzle.length, solution.length);
+        for (int i = 0; i < puzzle.length; i++) {
+            if (puzzle[i] != 0)
+                assertEquals(puzzle[i], solution[i]);
+        }
+        CandidateMasks masks = new CandidateMasks(CandidateMasks.boxSizeOf(solution.length));
+        masks.rebuild(solution);
+        final int size = masks.getSize();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int value = solution[y * size + x];
+                assertTrue(value >= 1 && value <= size);
+                assertEquals(masks.getAll() & ~CandidateMasks.bit(value),
+                        masks.getUsed(x, y, value));
+            }
+        }
+    }
+
+    /**
+     * Full grid of the given box size built from a shifted pattern
+     * */
+    static int[] patternGrid(int boxSize) {
+        final int size = boxSize * boxSize;
+        int[] grid = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                grid[y * size + x] = (boxSize * (y % boxSize) + y / boxSize + x) % size + 1;
+            }
+        }
+        return grid;
+    }
+
+    @Test
+    public void solvesShippedPuzzles() {
+        for (String puzzle : new String[]{ easyPuzzle, mediumPuzzle, hardPuzzle }) {
+            int[] puz = parse(puzzle);
+            assertSolves(puz, solver.solve(puz));
+        }
+    }
+
+    @Test
+    public void solvesEasyPuzzleToKnownSolution() {
+        assertArrayEquals(parse(easySolution), solver.solve(parse(easyPuzzle)));
+    }
+
+    @Test
+    public void solvesHardPuzzle() {
+        int[] puz = parse(inkalaPuzzle);
+        assertSolves(puz, solver.solve(puz));
+    }
+
+    @Test
+    public void solvesEmptyGrid() {
+        int[] puz = new int[81];
+        assertSolves(puz, solver.solve(puz));
+    }
+
+    @Test
+    public void solvesIntoGivenArray() {
+        int[] puz = parse(mediumPuzzle);
+        int[] solution = new int[81];
+        assertTrue(solver.solve(puz, solution));
+        assertSolves(puz, solution);
+    }
+
+    @Test
+    public void doesNotModifyPuzzle() {
+        int[] puz = parse(hardPuzzle);
+        solver.solve(puz);
+        assertArrayEquals(parse(hardPuzzle), puz);
+    }
+
+    @Test
+    public void clashingGivensHaveNoSolution() {
+        int[] puz = parse(easyPuzzle);
+        // A second 2 in the first row
+        puz[0] = 2;
+        assertNull(solver.solve(puz));
+    }
+
+    @Test
+    public void unsolvablePuzzleHasNoSolution() {
+        // The last tile of the first row can only be a 9, which its column already has
+        int[] puz = new int[81];
+        for (int i = 0; i < 8; i++) {
+            puz[i] = i + 1;
+        }
+        puz[9 * 4 + 8] = 9;
+        assertFalse(solver.solve(puz, new int[81]));
+    }
+
+    @Test
+    public void solverIsReusable() {
+        assertNull(solver.solve(parse("2" + easyPuzzle.substring(1))));
+        assertArrayEquals(parse(easySolution), solver.solve(parse(easyPuzzle)));
+    }
+
+    @Test
+    public void shippedPuzzlesHaveUniqueSolution() {
+        for (String puzzle : new String[]{ easyPuzzle, mediumPuzzle, hardPuzzle, inkalaPuzzle }) {
+            assertEquals(1, solver.countSolutions(parse(puzzle), 2));
+        }
+    }
+
+    @Test
+    public void countStopsAtLimit() {
+        int[] puz = new int[81];
+        assertEquals(2, solver.countSolutions(puz, 2));
+        assertEquals(5, solver.countSolutions(puz, 5));
+        assertEquals(0, solver.countSolutions(puz, 0));
+    }
+
+    @Test
+    public void countsBothSolutionsOfDeadlyPattern() {
+        // Clearing a 5 2 / 2 5 rectangle spread over two boxes leaves two ways to fill it
+        int[] puz = parse(easySolution);
+        puz[2] = 0;
+        puz[3] = 0;
+        puz[11] = 0;
+        puz[12] = 0;
+        assertEquals(2, solver.countSolutions(puz, 10));
+        assertEquals(1, solver.countSolutions(parse(easySolution), 10));
+    }
+
+    @Test
+    public void countWithoutSolution() {
+        int[] puz = parse(easyPuzzle);
+        puz[0] = 2;
+        assertEquals(0, solver.countSolutions(puz, 2));
+    }
+
+    @Test
+    public void countLeavesSolverReusable() {
+        solver.countSolutions(new int[81], 50);
+        assertArrayEquals(parse(easySolution), solver.solve(parse(easyPuzzle)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWrongSize() {
+        solver.solve(new int[9]);
+    }
+
+    @Test
+    public void countsEveryFourByFourGrid() {
+        assertEquals(288, createSolver(2).countSolutions(new int[16], 1000));
+    }
+
+    @Test
+    public void solvesSixteenBySixteen() {
+        int[] puz = patternGrid(4);
+        for (int i = 0; i < puz.length; i += 3) {
+            puz[i] = 0;
+        }
+        assertSolves(puz, createSolver(4).solve(puz));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPuzzleOfOtherBoxSize() {
+        createSolver(4).solve(new int[81]);
+    }
+
+    @Test
+    public void givesUpAfterMaxSteps() {
+        assertEquals(-1, solver.countSolutions(new int[81], 2, 10));
+        assertEquals(2, solver.countSolutions(new int[81], 2, Long.MAX_VALUE));
+        // Running out of steps leaves the solver reusable
+        assertArrayEquals(parse(easySolution), solver.solve(parse(easyPuzzle)));
+    }
+}
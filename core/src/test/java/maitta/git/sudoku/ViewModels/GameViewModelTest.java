@@ -0,0 +1,730 @@
+package maitta.git.sudoku.ViewModels;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static maitta.git.sudoku.ViewModels.GameViewModel.DIFFICULTY_CONTINUE;
+import static maitta.git.sudoku.ViewModels.GameViewModel.DIFFICULTY_EASY;
+import static maitta.git.sudoku.ViewModels.GameViewModel.DIFFICULTY_HARD;
+import static maitta.git.sudoku.ViewModels.GameViewModel.DIFFICULTY_MEDIUM;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import maitta.git.sudoku.Models.BacktrackingSolver;
+import maitta.git.sudoku.Models.CandidateMasks;
+import maitta.git.sudoku.Models.Generator;
+import maitta.git.sudoku.Models.Grader;
+import maitta.git.sudoku.Models.PuzzlePool;
+import maitta.git.sudoku.Models.SaveFormat;
+
+public class GameViewModelTest {
+    private GameViewModel gameVM;
+    private GameViewModel gameVMspy;
+    private Random rd;
+    private final long seed = 42;
+
+    private final String dummyPuzzle = "123456789";
+
+    private final String easyPuzzle = "000260701680070090190004500"
+            + "820100040004602900050003028" + "009300074040050036703018000";
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        gameVM = new GameViewModel();
+        gameVMspy = spy(gameVM);
+        rd = new Random();
+    }
+
+    @Test
+    public void setPuzzleContinue() {
+        ArgumentCaptor stringCaptor = ArgumentCaptor.forClass(String.class);
+        int[] dummyReturn = new int[]{1, 2, 3};
+        doReturn(dummyReturn).when(gameVMspy).fromPuzzleString(anyString());
+        gameVMspy.setPuzzle(DIFFICULTY_CONTINUE, dummyPuzzle);
+        verify(gameVMspy).fromPuzzleString((String)stringCaptor.capture());
+        assertEquals(stringCaptor.getValue(), dummyPuzzle);
+        assertSame(dummyReturn, gameVMspy.getPuzzle());
+    }
+
+    @Test
+    public void setPuzzleContinueWithoutPrevious() {
+        GameViewModel seeded = spy(new GameViewModel(new Generator(seed)));
+        seeded.setPuzzle(DIFFICULTY_CONTINUE, null);
+        verify(seeded, never()).fromPuzzleString(anyString());
+        assertArrayEquals(new Generator(seed).generate(DIFFICULTY_EASY), seeded.getPuzzle());
+    }
+
+    @Test
+    public void setPuzzleHardDifficulty() {
+        assertGeneratedPuzzle(DIFFICULTY_HARD);
+    }
+
+    @Test
+    public void setPuzzleNormalDifficulty() {
+        assertGeneratedPuzzle(DIFFICULTY_MEDIUM);
+    }
+
+    @Test
+    public void setPuzzleEasyDifficulty() {
+        assertGeneratedPuzzle(DIFFICULTY_EASY);
+    }
+
+    @Test
+    public void setPuzzleTakesFromPool() {
+        int[] pooled = new int[81];
+        PuzzlePool pool = mock(PuzzlePool.class);
+        when(pool.take(3, DIFFICULTY_HARD)).thenReturn(pooled);
+        gameVM.setPuzzlePool(pool);
+        gameVM.setPuzzle(DIFFICULTY_HARD, dummyPuzzle);
+        assertSame(pooled, gameVM.getPuzzle());
+    }
+
+    @Test
+    public void setPuzzleGeneratesWhenPoolEmpty() {
+        GameViewModel seeded = new GameViewModel(new Generator(seed));
+        seeded.setPuzzlePool(mock(PuzzlePool.class));
+        seeded.setPuzzle(DIFFICULTY_MEDIUM, dummyPuzzle);
+        assertArrayEquals(new Generator(seed).generate(DIFFICULTY_MEDIUM), seeded.getPuzzle());
+    }
+
+    /**
+     * New games come from the generator, not from a stored string, and have a unique solution
+     * */
+    private void assertGeneratedPuzzle(int difficulty) {
+        GameViewModel seeded = spy(new GameViewModel(new Generator(seed)));
+        seeded.setPuzzle(difficulty, dummyPuzzle);
+        verify(seeded, never()).fromPuzzleString(anyString());
+        assertEquals(81, seeded.getPuzzle().length);
+        assertEquals(1, new BacktrackingSolver().countSolutions(seeded.getPuzzle(), 2));
+        assertArrayEquals(new Generator(seed).generate(difficulty), seeded.getPuzzle());
+    }
+
+    @Test
+    public void fromPuzzleString() {
+        int[] res = gameVM.fromPuzzleString(dummyPuzzle);
+        assertEquals(dummyPuzzle, Arrays.toString(res).replaceAll("\\[|\\]|,|\\s", ""));
+    }
+
+    @Test
+    public void calculateUsedTilesSetsValues() {
+        List<int[]> usedTilesBefore, usedTilesAfter;
+        gameVM.setPuzzle(DIFFICULTY_EASY, easyPuzzle);
+        usedTilesBefore = getAllUsedTiles();
+        gameVM.calculateUsedTiles();
+        usedTilesAfter = getAllUsedTiles();
+        assertEquals(usedTilesBefore.size(), usedTilesAfter.size());
+        assertNotEquals(usedTilesBefore.hashCode(), usedTilesAfter.hashCode());
+    }
+
+    private List<int[]> getAllUsedTiles(){
+        List<int[]> res = new ArrayList<>();
+        for (int x = 0; x < 9; x++) {
+            for (int y = 0; y < 9; y++) {
+                res.add(gameVM.getUsedTiles(x,y));
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void getUsedTilesMatchesPeers() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        // Row 0 holds 2,6,7,1, column 0 holds 6,1,8,7 and the box holds 6,8,1,9
+        assertArrayEquals(new int[]{1,2,6,7,8,9}, gameVM.getUsedTiles(0, 0));
+        // The tile's own value is not reported as used
+        assertArrayEquals(new int[]{1,7,8,9}, gameVM.getUsedTiles(0, 1));
+    }
+
+    @Test
+    public void toPuzzleString() {
+        int[] param = new int[]{1,2,3,4,5,6,7,8,9};
+        String res = gameVM.toPuzzleString(param);
+        assertEquals(dummyPuzzle, res);
+    }
+
+    @Test
+    public void getTileEasyPuzzle() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        for(int x = 0; x < 9; x++){
+            for(int y = 0; y < 9; y++){
+                int res = gameVM.getTile(x,y);
+                int n = Character.getNumericValue(easyPuzzle.charAt(y * 9 + x));
+                assertEquals(n, res);
+            }
+        }
+    }
+
+    @Test
+    public void setTileIfNotValid() {
+        int x = rd.nextInt(), y = rd.nextInt();
+        int[] dummyRes = new int[]{1,2,3,4,5};
+        doReturn(0x1F).when(gameVMspy).getUsedMask(x, y);
+        for (int i : dummyRes) {
+            boolean res = gameVMspy.setTileIfValid(x, y, i);
+            assertFalse(res);
+        }
+    }
+
+    @Test
+    public void setTileIfValid() {
+        int x = rd.nextInt(), y = rd.nextInt();
+        int invalidValues = 0x1E0; // 6,7,8,9
+        int validValue = rd.nextInt(5)+1;
+        ArgumentCaptor intCaptor1 = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor intCaptor2 = ArgumentCaptor.forClass(Integer.class);
+        ArgumentCaptor intCaptor3 = ArgumentCaptor.forClass(Integer.class);
+
+        doReturn(invalidValues).when(gameVMspy).getUsedMask(x, y);
+        doReturn(0).when(gameVMspy).getTile(x, y);
+        doReturn(false).when(gameVMspy).isGiven(x, y);
+        doNothing().when(gameVMspy).setTile(x, y, validValue);
+        doNothing().when(gameVMspy).updateUsedTiles(x, y, 0, validValue);
+        boolean res = gameVMspy.setTileIfValid(x, y, validValue);
+        verify(gameVMspy).setTile((int)intCaptor1.capture(), (int)intCaptor2.capture(),
+                (int)intCaptor3.capture());
+        assertEquals(x, intCaptor1.getValue());
+        assertEquals(y, intCaptor2.getValue());
+        assertEquals(validValue, intCaptor3.getValue());
+        verify(gameVMspy).updateUsedTiles(x, y, 0, validValue);
+        verify(gameVMspy, never()).calculateUsedTiles();
+        assertTrue(res);
+    }
+
+    @Test
+    public void setTileIfValidKeepsUsedTilesConsistent() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setConsistencyCheck(true);
+        for (int move = 0; move < 2000; move++) {
+            int x = rd.nextInt(9), y = rd.nextInt(9);
+            // Mix of new values, overwrites and clears
+            gameVM.setTileIfValid(x, y, rd.nextInt(10));
+        }
+    }
+
+    @Test
+    public void setTileIfValidClearsValue() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setConsistencyCheck(true);
+        // (3, 0) holds a 2 which is then seen as used from (3, 1)
+        assertTrue((gameVM.getUsedMask(3, 1) & 0x2) != 0);
+        assertTrue(gameVM.setTileIfValid(3, 0, 0));
+        assertEquals(0, gameVM.getUsedMask(3, 1) & 0x2);
+        assertTrue(gameVM.setTileIfValid(3, 1, 2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void consistencyCheckDetectsDrift() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setConsistencyCheck(true);
+        // Tile was 0, claiming it was a 2 drops the 2 at (3, 0) from the row mask
+        gameVM.updateUsedTiles(0, 0, 2, 0);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void getUsedTilesFails() {
+        int maxIndex = 9;
+        gameVM.setPuzzle(DIFFICULTY_EASY, easyPuzzle);
+        gameVM.getUsedTiles(maxIndex+1, maxIndex+1);
+    }
+
+    @Test
+    public void setTile() {
+        int maxBound = 9;
+        int x = rd.nextInt(maxBound), y = rd.nextInt(maxBound), value = rd.nextInt(maxBound);
+        gameVM.setPuzzle(DIFFICULTY_EASY, easyPuzzle);
+        int prevValue = gameVM.getPuzzle()[y * 9 + x];
+        gameVM.setTile(x, y, value);
+        int curValue = gameVM.getPuzzle()[y * 9 + x];
+        if(prevValue != value) assertNotEquals(prevValue, curValue);
+        assertEquals(value, curValue);
+    }
+
+    @Test
+    public void getTileString() {
+        int maxBound = 9;
+        int x = rd.nextInt(maxBound), y = rd.nextInt(maxBound);
+        int randomRes = rd.nextInt(maxBound)+1;
+        gameVMspy.setPuzzle(DIFFICULTY_EASY, easyPuzzle);
+        doReturn(randomRes).when(gameVMspy).getTile(x, y);
+        String res = gameVMspy.getTileString(x, y);
+        assertEquals(String.valueOf(randomRes), res);
+    }
+
+    @Test
+    public void getTileEmptyString() {
+        int maxBound = 9;
+        int x = rd.nextInt(maxBound), y = rd.nextInt(maxBound);
+        gameVMspy.setPuzzle(DIFFICULTY_EASY, easyPuzzle);
+        doReturn(0).when(gameVMspy).getTile(x, y);
+        String res = gameVMspy.getTileString(x, y);
+        assertEquals("", res);
+    }
+
+    @Test
+    public void metricsRecordMovesWhenEnabled() {
+        gameVM.setPuzzle(DIFFICULTY_EASY, easyPuzzle);
+        gameVM.getMetrics().setEnabled(true);
+        gameVM.calculateUsedTiles();
+        gameVM.setTileIfValid(0, 0, 3);
+        gameVM.setTileIfValid(0, 0, 2);
+        assertEquals(1, gameVM.getMetrics().getRebuildTimes().getCount());
+        assertEquals(2, gameVM.getMetrics().getMoveTimes().getCount());
+    }
+
+    @Test
+    public void metricsIdleWhenDisabled() {
+        gameVM.setPuzzle(DIFFICULTY_EASY, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setTileIfValid(0, 0, 3);
+        assertEquals(0, gameVM.getMetrics().getRebuildTimes().getCount());
+        assertEquals(0, gameVM.getMetrics().getMoveTimes().getCount());
+    }
+
+    @Test
+    public void snapshotContinues() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.setTile(0, 0, 3);
+        SaveFormat.Snapshot snapshot = gameVM.toSnapshot();
+        // The snapshot is a copy, later moves do not change it
+        gameVM.setTile(0, 0, 0);
+        GameViewModel restored = new GameViewModel(new Generator(seed));
+        restored.setSavedPuzzle(DIFFICULTY_CONTINUE, snapshot);
+        assertEquals(3, restored.getTile(0, 0));
+        assertEquals("3" + easyPuzzle.substring(1), restored.toPuzzleString(restored.getPuzzle()));
+    }
+
+    @Test
+    public void snapshotMissingStartsNewGame() {
+        GameViewModel seeded = new GameViewModel(new Generator(seed));
+        seeded.setSavedPuzzle(DIFFICULTY_CONTINUE, null);
+        assertEquals(81, seeded.getPuzzle().length);
+    }
+
+    @Test
+    public void moveListenerOnlyToldAboutAcceptedMoves() {
+        final List<Integer> moves = new ArrayList<>();
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setOnMoveListener(new GameViewModel.OnMoveListener() {
+            @Override
+            public void onMove(int x, int y, int value) {
+                moves.add(y * 9 + x);
+                moves.add(value);
+            }
+
+            @Override
+            public void onMarks(int x, int y, int marks) {
+            }
+        });
+        // 2 is already in the first row
+        assertFalse(gameVM.setTileIfValid(0, 0, 2));
+        assertTrue(gameVM.setTileIfValid(0, 0, 3));
+        assertEquals(Arrays.asList(0, 3), moves);
+    }
+
+    @Test
+    public void newPuzzleMarksGivens() {
+        GameViewModel seeded = new GameViewModel(new Generator(seed));
+        seeded.setPuzzle(DIFFICULTY_MEDIUM, null);
+        int puz[] = seeded.getPuzzle().clone();
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                assertEquals(puz[y * 9 + x] != 0, seeded.isGiven(x, y));
+            }
+        }
+        assertArrayEquals(puz, seeded.getGivenPuzzle());
+    }
+
+    @Test
+    public void givensCannotBeChanged() {
+        GameViewModel seeded = new GameViewModel(new Generator(seed));
+        seeded.setPuzzle(DIFFICULTY_EASY, null);
+        seeded.calculateUsedTiles();
+        int given = seeded.getPuzzle().length - 1;
+        while (seeded.getPuzzle()[given] == 0)
+            given--;
+        int x = given % 9, y = given / 9;
+        int value = seeded.getTile(x, y);
+        assertFalse(seeded.setTileIfValid(x, y, 0));
+        assertEquals(value, seeded.getTile(x, y));
+    }
+
+    @Test
+    public void givensSurviveSaving() {
+        GameViewModel seeded = new GameViewModel(new Generator(seed));
+        seeded.setPuzzle(DIFFICULTY_HARD, null);
+        int givenPuzzle[] = seeded.getGivenPuzzle();
+        int empty = 0;
+        while (seeded.getPuzzle()[empty] != 0)
+            empty++;
+        seeded.setTile(empty % 9, empty / 9, seeded.getSolution()[empty]);
+        GameViewModel restored = new GameViewModel(new Generator(seed));
+        restored.setSavedPuzzle(DIFFICULTY_CONTINUE, seeded.toSnapshot());
+        assertArrayEquals(givenPuzzle, restored.getGivenPuzzle());
+        assertFalse(restored.isGiven(empty % 9, empty / 9));
+    }
+
+    @Test
+    public void solutionOfGivens() {
+        GameViewModel seeded = new GameViewModel(new Generator(seed));
+        seeded.setPuzzle(DIFFICULTY_MEDIUM, null);
+        int solution[] = seeded.getSolution();
+        assertArrayEquals(new BacktrackingSolver().solve(seeded.getGivenPuzzle()), solution);
+        // User entries do not change it
+        seeded.setTile(0, 0, 0);
+        assertSame(solution, seeded.getSolution());
+    }
+
+    @Test
+    public void legacyStringHasNoGivens() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        assertFalse(gameVM.isGiven(3, 0));
+        assertEquals(null, gameVM.getSolution());
+    }
+
+    @Test
+    public void newBoxSizeStartsLargerBoard() {
+        gameVM.setNewBoxSize(4);
+        gameVM.setPuzzle(DIFFICULTY_EASY, null);
+        gameVM.calculateUsedTiles();
+        assertEquals(4, gameVM.getBoxSize());
+        assertEquals(16, gameVM.getSize());
+        assertEquals(256, gameVM.getPuzzle().length);
+        assertEquals(0xFFFF, gameVM.getAllMask());
+        int empty = 0;
+        while (gameVM.getPuzzle()[empty] != 0)
+            empty++;
+        int x = empty % 16, y = empty / 16;
+        int value = gameVM.getSolution()[empty];
+        assertTrue(gameVM.setTileIfValid(x, y, value));
+        assertEquals(value, gameVM.getPuzzle()[empty]);
+        assertEquals(String.valueOf(value), gameVM.getTileString(x, y));
+    }
+
+    @Test
+    public void largeBoardsNeedGeneratingUnlessPooled() {
+        assertFalse(gameVM.needsGenerating(DIFFICULTY_EASY));
+        gameVM.setNewBoxSize(4);
+        assertTrue(gameVM.needsGenerating(DIFFICULTY_EASY));
+        PuzzlePool pool = mock(PuzzlePool.class);
+        when(pool.size(4, DIFFICULTY_EASY)).thenReturn(1);
+        gameVM.setPuzzlePool(pool);
+        assertFalse(gameVM.needsGenerating(DIFFICULTY_EASY));
+        assertTrue(gameVM.needsGenerating(DIFFICULTY_HARD));
+    }
+
+    @Test
+    public void generatedPuzzleStartsNewGame() {
+        int puz[] = new Generator(new Random(seed), 4).generate(DIFFICULTY_EASY);
+        gameVM.setGeneratedPuzzle(puz);
+        gameVM.calculateUsedTiles();
+        assertEquals(4, gameVM.getBoxSize());
+        assertSame(puz, gameVM.getPuzzle());
+        int given = 0;
+        while (puz[given] == 0)
+            given++;
+        assertTrue(gameVM.isGiven(given % 16, given / 16));
+        assertFalse(gameVM.canUndo());
+    }
+
+    @Test
+    public void valuesAboveBoardSizeAreRefused() {
+        gameVM.setNewBoxSize(2);
+        gameVM.setPuzzle(DIFFICULTY_EASY, null);
+        gameVM.calculateUsedTiles();
+        int empty = 0;
+        while (gameVM.getPuzzle()[empty] != 0)
+            empty++;
+        assertFalse(gameVM.setTileIfValid(empty % 4, empty / 4, 5));
+        assertFalse(gameVM.setTileIfValid(empty % 4, empty / 4, 9));
+    }
+
+    @Test
+    public void snapshotRestoresBoxSize() {
+        gameVM.setNewBoxSize(2);
+        gameVM.setPuzzle(DIFFICULTY_MEDIUM, null);
+        SaveFormat.Snapshot snapshot = gameVM.toSnapshot();
+        GameViewModel restored = new GameViewModel(new Generator(seed));
+        restored.setSavedPuzzle(DIFFICULTY_CONTINUE, snapshot);
+        restored.calculateUsedTiles();
+        assertEquals(2, restored.getBoxSize());
+        assertArrayEquals(snapshot.getTiles(), restored.getPuzzle());
+        // The legacy string is always 9x9
+        restored.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        assertEquals(9, restored.getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedBoxSize() {
+        gameVM.setNewBoxSize(6);
+    }
+
+    @Test
+    public void hintIsCachedUntilTheNextMove() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        Grader.Hint hint = gameVM.getHint();
+        assertSame(hint, gameVM.getHint());
+        int size = gameVM.getSize();
+        int x = hint.getCell() % size;
+        int y = hint.getCell() / size;
+        assertTrue(gameVM.setTileIfValid(x, y, hint.getValue()));
+        Grader.Hint next = gameVM.getHint();
+        assertNotSame(hint, next);
+        assertNotEquals(hint.getCell(), next.getCell());
+    }
+
+    @Test
+    public void wrongEntryIsFoundInsteadOfHint() {
+        GameViewModel seeded = new GameViewModel(new Generator(7));
+        seeded.setPuzzle(DIFFICULTY_EASY, null);
+        seeded.calculateUsedTiles();
+        assertEquals(-1, seeded.findMistake());
+        int solution[] = seeded.getSolution();
+        // An empty tile with a value the other tiles allow that is still wrong
+        int cell = -1;
+        int wrong = 0;
+        for (int i = 0; i < 81 && cell < 0; i++) {
+            int free = ~seeded.getUsedMask(i % 9, i / 9) & seeded.getAllMask();
+            free &= ~CandidateMasks.bit(solution[i]);
+            if (seeded.getPuzzle()[i] == 0 && free != 0) {
+                cell = i;
+                wrong = Integer.numberOfTrailingZeros(free) + 1;
+            }
+        }
+        assertTrue(seeded.setTileIfValid(cell % 9, cell / 9, wrong));
+        assertEquals(cell, seeded.findMistake());
+        assertNull(seeded.getHint());
+        assertTrue(seeded.setTileIfValid(cell % 9, cell / 9, 0));
+        assertEquals(-1, seeded.findMistake());
+        assertNotNull(seeded.getHint());
+    }
+
+    @Test
+    public void toggleMarkFlipsOneValue() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        assertTrue(gameVM.toggleMark(0, 0, 3));
+        assertTrue(gameVM.toggleMark(0, 0, 4));
+        assertEquals(CandidateMasks.bit(3) | CandidateMasks.bit(4), gameVM.getMarks(0, 0));
+        assertTrue(gameVM.toggleMark(0, 0, 3));
+        assertEquals(CandidateMasks.bit(4), gameVM.getMarks(0, 0));
+        assertTrue(gameVM.toggleMark(0, 0, 0));
+        assertEquals(0, gameVM.getMarks(0, 0));
+    }
+
+    @Test
+    public void toggleMarkRefusesFilledTilesAndUsedValues() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        // (3, 0) holds 2 and 2 is already in the first row
+        assertFalse(gameVM.toggleMark(3, 0, 1));
+        assertFalse(gameVM.toggleMark(0, 0, 2));
+        assertFalse(gameVM.toggleMark(0, 0, 10));
+        assertEquals(0, gameVM.getMarks(0, 0));
+    }
+
+    @Test
+    public void movePrunesPeerMarksWhenEnabled() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.toggleMark(1, 0, 3);
+        gameVM.toggleMark(0, 4, 3);
+        assertTrue(gameVM.setTileIfValid(0, 0, 3));
+        assertEquals(CandidateMasks.bit(3), gameVM.getMarks(1, 0));
+        gameVM.setTileIfValid(0, 0, 0);
+        gameVM.setAutoPrune(true);
+        assertTrue(gameVM.setTileIfValid(0, 0, 3));
+        assertEquals(0, gameVM.getMarks(1, 0));
+        assertEquals(0, gameVM.getMarks(0, 4));
+    }
+
+    @Test
+    public void snapshotKeepsMarks() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        assertNull(gameVM.toSnapshot().getMarks());
+        gameVM.toggleMark(0, 0, 3);
+        GameViewModel restored = new GameViewModel();
+        restored.setSavedPuzzle(DIFFICULTY_CONTINUE, gameVM.toSnapshot());
+        assertEquals(CandidateMasks.bit(3), restored.getMarks(0, 0));
+    }
+
+    @Test
+    public void undoAndRedoMoves() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setConsistencyCheck(true);
+        assertFalse(gameVM.canUndo());
+        assertTrue(gameVM.setTileIfValid(0, 0, 3));
+        assertTrue(gameVM.setTileIfValid(0, 0, 4));
+        assertTrue(gameVM.undo());
+        assertEquals(3, gameVM.getTile(0, 0));
+        assertTrue(gameVM.undo());
+        assertEquals(0, gameVM.getTile(0, 0));
+        assertFalse(gameVM.undo());
+        // The masks follow, 3 is free again in the first row
+        assertTrue(gameVM.setTileIfValid(1, 0, 3));
+        assertFalse(gameVM.canRedo());
+        assertTrue(gameVM.undo());
+        assertTrue(gameVM.redo());
+        assertEquals(3, gameVM.getTile(1, 0));
+    }
+
+    @Test
+    public void undoRestoresPrunedMarks() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setAutoPrune(true);
+        gameVM.toggleMark(1, 0, 3);
+        gameVM.toggleMark(0, 4, 3);
+        gameVM.setTileIfValid(0, 0, 3);
+        assertEquals(0, gameVM.getMarks(1, 0));
+        // The move and the marks it pruned are one action
+        assertTrue(gameVM.undo());
+        assertEquals(0, gameVM.getTile(0, 0));
+        assertEquals(CandidateMasks.bit(3), gameVM.getMarks(1, 0));
+        assertEquals(CandidateMasks.bit(3), gameVM.getMarks(0, 4));
+        assertTrue(gameVM.redo());
+        assertEquals(3, gameVM.getTile(0, 0));
+        assertEquals(0, gameVM.getMarks(0, 4));
+        assertFalse(gameVM.canRedo());
+    }
+
+    @Test
+    public void repeatedValueKeepsActionsApart() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.toggleMark(1, 0, 3);
+        gameVM.setTileIfValid(0, 0, 3);
+        assertTrue(gameVM.setTileIfValid(4, 4, 8));
+        gameVM.setAutoPrune(true);
+        assertTrue(gameVM.setTileIfValid(0, 0, 3));
+        // Nothing changed, so there is nothing to prune or undo
+        assertEquals(CandidateMasks.bit(3), gameVM.getMarks(1, 0));
+        assertTrue(gameVM.undo());
+        assertEquals(0, gameVM.getTile(4, 4));
+        assertEquals(3, gameVM.getTile(0, 0));
+    }
+
+    @Test
+    public void undoClearedMarksAtOnce() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.toggleMark(0, 0, 3);
+        gameVM.toggleMark(0, 0, 4);
+        gameVM.toggleMark(0, 0, 0);
+        assertTrue(gameVM.undo());
+        assertEquals(CandidateMasks.bit(3) | CandidateMasks.bit(4), gameVM.getMarks(0, 0));
+    }
+
+    @Test
+    public void snapshotKeepsHistory() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setTileIfValid(0, 0, 3);
+        gameVM.setTileIfValid(2, 0, 5);
+        gameVM.undo();
+        GameViewModel restored = new GameViewModel();
+        restored.setSavedPuzzle(DIFFICULTY_CONTINUE, gameVM.toSnapshot());
+        restored.calculateUsedTiles();
+        assertTrue(restored.redo());
+        assertEquals(5, restored.getTile(2, 0));
+        assertTrue(restored.undo());
+        assertTrue(restored.undo());
+        assertEquals(0, restored.getTile(0, 0));
+    }
+
+    @Test
+    public void newPuzzleClearsHistory() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setTileIfValid(0, 0, 3);
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        assertFalse(gameVM.canUndo());
+    }
+
+    @Test
+    public void allowConflictsAcceptsClashingValues() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        // 2 is already at (3, 0)
+        assertFalse(gameVM.setTileIfValid(0, 0, 2));
+        gameVM.setAllowConflicts(true);
+        assertTrue(gameVM.setTileIfValid(0, 0, 2));
+        assertTrue(gameVM.isConflict(0, 0));
+        assertTrue(gameVM.isConflict(3, 0));
+        assertEquals(0, gameVM.nextConflict(0));
+        assertEquals(3, gameVM.nextConflict(1));
+        assertEquals(-1, gameVM.nextConflict(4));
+        assertNull(gameVM.getHint());
+    }
+
+    @Test
+    public void conflictsFollowMovesAndUndo() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setConsistencyCheck(true);
+        gameVM.setAllowConflicts(true);
+        gameVM.setTileIfValid(0, 0, 2);
+        gameVM.setTileIfValid(0, 0, 3);
+        assertEquals(-1, gameVM.nextConflict(0));
+        gameVM.undo();
+        assertTrue(gameVM.isConflict(3, 0));
+        // Clearing a clash is always allowed, even once the mode is off
+        gameVM.setAllowConflicts(false);
+        assertTrue(gameVM.setTileIfValid(0, 0, 0));
+        assertEquals(-1, gameVM.nextConflict(0));
+    }
+
+    @Test
+    public void undoRestoresConflictOnceDisallowed() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, easyPuzzle);
+        gameVM.calculateUsedTiles();
+        gameVM.setAllowConflicts(true);
+        gameVM.setTileIfValid(0, 0, 2);
+        gameVM.setTileIfValid(0, 0, 3);
+        gameVM.setAllowConflicts(false);
+        assertTrue(gameVM.undo());
+        assertEquals(2, gameVM.getTile(0, 0));
+        assertTrue(gameVM.isConflict(0, 0));
+        assertTrue(gameVM.isConflict(3, 0));
+        assertEquals(0, gameVM.nextConflict(0));
+        assertNull(gameVM.getHint());
+    }
+
+    @Test
+    public void rebuildFindsSavedConflicts() {
+        gameVM.setPuzzle(DIFFICULTY_CONTINUE, "2" + easyPuzzle.substring(1));
+        gameVM.calculateUsedTiles();
+        assertTrue(gameVM.isConflict(0, 0));
+        assertTrue(gameVM.isConflict(3, 0));
+    }
+}